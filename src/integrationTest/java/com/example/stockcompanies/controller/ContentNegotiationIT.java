@@ -0,0 +1,144 @@
+package com.example.stockcompanies.controller;
+
+import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.dto.CompanyStocksResponse;
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+import tools.jackson.dataformat.smile.SmileMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+// Accept header negotiation of the response format: CBOR, Smile, JSON as the default
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class ContentNegotiationIT {
+
+    private static final String CBOR = "application/cbor";
+    private static final String SMILE = "application/x-jackson-smile";
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Autowired private CompanyRepository companyRepository;
+
+    @MockitoBean private FinnhubFeignClient finnhubFeignClient;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @Test
+    void company_stocks_are_encoded_in_the_accepted_format() throws Exception {
+        Company company = companyRepository.save(
+                new Company("Binary Co", "BIN", "US", null, "bin@example.com", Instant.now()));
+        FinnhubCompanyProfileResponse finnhub = new FinnhubCompanyProfileResponse();
+        finnhub.setMarketCapitalization(100.0);
+        finnhub.setShareOutstanding(10.0);
+        when(finnhubFeignClient.getCompanyProfile2(eq("BIN"), anyString())).thenReturn(finnhub);
+        String path = "/company-stocks/" + company.getId();
+
+        HttpResponse<byte[]> json = get(path, null);
+        HttpResponse<byte[]> cbor = get(path, CBOR);
+        HttpResponse<byte[]> smile = get(path, SMILE);
+
+        // no Accept header -> JSON
+        assertThat(json.headers().firstValue("Content-Type")).hasValueSatisfying(type -> assertThat(type).startsWith("application/json"));
+        assertThat(cbor.headers().firstValue("Content-Type")).contains(CBOR);
+        assertThat(smile.headers().firstValue("Content-Type")).contains(SMILE);
+        assertThat(cbor.headers().firstValue("Vary")).hasValueSatisfying(vary -> assertThat(vary).contains("Accept"));
+
+        // same response in every format, the binary ones are smaller
+        CompanyStocksResponse fromJson = read(JsonMapper.builder().build(), json.body());
+        for (CompanyStocksResponse decoded : List.of(
+                read(CBORMapper.builder().build(), cbor.body()),
+                read(SmileMapper.builder().build(), smile.body()))) {
+            assertThat(decoded.getSymbol()).isEqualTo("BIN");
+            assertThat(decoded.getMarketCapitalization()).isEqualTo(100.0);
+            assertThat(decoded.getFetchDate()).isEqualTo(fromJson.getFetchDate());
+            assertThat(decoded.getCreatedAt()).isEqualTo(fromJson.getCreatedAt());
+        }
+        assertThat(cbor.body().length).isLessThan(json.body().length);
+        assertThat(smile.body().length).isLessThan(json.body().length);
+
+        // the formats are not byte-equal -> weak ETag, which a CBOR client can still revalidate with
+        String eTag = json.headers().firstValue("ETag").orElseThrow();
+        assertThat(eTag).startsWith("W/\"");
+        assertThat(cbor.headers().firstValue("ETag")).contains(eTag);
+        HttpRequest revalidation = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", CBOR)
+                .header("If-None-Match", eTag)
+                .GET()
+                .build();
+        assertThat(http.send(revalidation, HttpResponse.BodyHandlers.ofByteArray()).statusCode()).isEqualTo(304);
+    }
+
+    @Test
+    void companies_page_is_encoded_in_the_accepted_format_and_falls_back_to_json() throws Exception {
+        companyRepository.save(new Company("Page Binary Co", "PBN", "US", null, "pbn@example.com", Instant.now()));
+
+        HttpResponse<byte[]> cbor = get("/companies", CBOR);
+        assertThat(cbor.statusCode()).isEqualTo(200);
+        assertThat(cbor.headers().firstValue("Content-Type")).contains(CBOR);
+        List<Map<String, Object>> companies = CBORMapper.builder().build()
+                .readValue(cbor.body(), new TypeReference<>() {});
+        assertThat(companies).extracting(company -> company.get("symbol")).contains("PBN");
+
+        // JSON preferred over the binary formats when the client accepts several
+        HttpResponse<byte[]> preferred = get("/companies", "application/json, " + CBOR + ";q=0.5");
+        assertThat(preferred.headers().firstValue("Content-Type")).hasValueSatisfying(type -> assertThat(type).startsWith("application/json"));
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET();
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static CompanyStocksResponse read(ObjectMapper mapper, byte[] body) {
+        return mapper.readValue(body, CompanyStocksResponse.class);
+    }
+}
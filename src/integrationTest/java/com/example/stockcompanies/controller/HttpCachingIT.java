@@ -0,0 +1,185 @@
+package com.example.stockcompanies.controller;
+
+import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.service.CompanyStocksCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// conditional GETs over real HTTP: ETag, If-None-Match -> 304 and Cache-Control
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class HttpCachingIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Autowired private CompanyRepository companyRepository;
+    @Autowired private MeterRegistry meterRegistry;
+    @Autowired private CompanyStocksCache companyStocksCache;
+
+    @MockitoBean private FinnhubFeignClient finnhubFeignClient;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @Test
+    void company_stocks_revalidation_is_answered_from_the_cache_until_the_company_changes() throws Exception {
+        Company company = companyRepository.save(
+                new Company("ETag Co", "ETG", "US", null, "etg@example.com", Instant.now()));
+        FinnhubCompanyProfileResponse finnhub = new FinnhubCompanyProfileResponse();
+        finnhub.setMarketCapitalization(100.0);
+        finnhub.setShareOutstanding(10.0);
+        when(finnhubFeignClient.getCompanyProfile2(eq("ETG"), anyString())).thenReturn(finnhub);
+        String path = "/company-stocks/" + company.getId();
+
+        // first request fetches and answers with validators
+        HttpResponse<String> first = get(path, null);
+        assertThat(first.statusCode()).isEqualTo(200);
+        String eTag = first.headers().firstValue("ETag").orElseThrow();
+        assertThat(eTag).startsWith("W/\"" + company.getId() + "-");
+        assertThat(first.headers().firstValue("Cache-Control").orElseThrow())
+                .contains("max-age=")
+                .contains("public");
+
+        // revalidation -> 304 without a body and without a database read
+        double reads = findStockViewCalls();
+        HttpResponse<String> revalidated = get(path, eTag);
+        assertThat(revalidated.statusCode()).isEqualTo(304);
+        assertThat(revalidated.body()).isEmpty();
+        assertThat(revalidated.headers().firstValue("ETag")).contains(eTag);
+        assertThat(findStockViewCalls()).isEqualTo(reads);
+
+        // a company update changes its version, the old ETag no longer matches
+        put("/companies/" + company.getId(), """
+                {"name": "ETag Co Renamed", "symbol": "ETG", "country": "US", "email": "etg@example.com"}
+                """);
+        HttpResponse<String> changed = get(path, eTag);
+        assertThat(changed.statusCode()).isEqualTo(200);
+        assertThat(changed.body()).contains("ETag Co Renamed");
+        assertThat(changed.headers().firstValue("ETag").orElseThrow()).isNotEqualTo(eTag);
+
+        // the snapshot itself was fetched once
+        verify(finnhubFeignClient, times(1)).getCompanyProfile2(eq("ETG"), anyString());
+    }
+
+    @Test
+    void company_stocks_revalidation_on_a_cold_cache_is_answered_from_the_stored_snapshot() throws Exception {
+        Company company = companyRepository.save(
+                new Company("Cold Co", "CLD", "US", null, "cld@example.com", Instant.now()));
+        FinnhubCompanyProfileResponse finnhub = new FinnhubCompanyProfileResponse();
+        finnhub.setMarketCapitalization(50.0);
+        finnhub.setShareOutstanding(5.0);
+        when(finnhubFeignClient.getCompanyProfile2(eq("CLD"), anyString())).thenReturn(finnhub);
+        String path = "/company-stocks/" + company.getId();
+        String eTag = get(path, null).headers().firstValue("ETag").orElseThrow();
+
+        // given - the in-memory entry is gone (restart, eviction), today's snapshot is still stored
+        companyStocksCache.evictCompany(company.getId());
+
+        // when
+        double reads = findStockViewCalls();
+        HttpResponse<String> revalidated = get(path, eTag);
+
+        // then - one database read rebuilds the same ETag, Finnhub is not called again
+        assertThat(revalidated.statusCode()).isEqualTo(304);
+        assertThat(findStockViewCalls()).isEqualTo(reads + 1);
+        verify(finnhubFeignClient, times(1)).getCompanyProfile2(eq("CLD"), anyString());
+    }
+
+    @Test
+    void companies_page_has_a_collection_validator() throws Exception {
+        Company company = companyRepository.save(
+                new Company("Page Co", "PGE", "US", null, "pge@example.com", Instant.now()));
+        String path = "/companies?limit=1000";
+
+        HttpResponse<String> first = get(path, null);
+        assertThat(first.statusCode()).isEqualTo(200);
+        String eTag = first.headers().firstValue("ETag").orElseThrow();
+        assertThat(first.headers().firstValue("Cache-Control")).contains("no-cache");
+
+        // nothing changed -> 304
+        assertThat(get(path, eTag).statusCode()).isEqualTo(304);
+
+        // an updated company on the page -> new body and new ETag
+        put("/companies/" + company.getId(), """
+                {"name": "Page Co Renamed", "symbol": "PGE", "country": "US", "email": "pge@example.com"}
+                """);
+        HttpResponse<String> changed = get(path, eTag);
+        assertThat(changed.statusCode()).isEqualTo(200);
+        assertThat(changed.headers().firstValue("ETag").orElseThrow()).isNotEqualTo(eTag);
+
+        // a new company on the page -> new ETag as well
+        String afterUpdate = changed.headers().firstValue("ETag").orElseThrow();
+        companyRepository.save(new Company("Other Co", "OTH", "US", null, "oth@example.com", Instant.now()));
+        assertThat(get(path, afterUpdate).statusCode()).isEqualTo(200);
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void put(String path, String json) throws Exception {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(json))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(200);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private double findStockViewCalls() {
+        return meterRegistry.get("spring.data.repository.invocations")
+                .tag("repository", "CompanyRepository")
+                .tag("method", "findStockView")
+                .timer().count();
+    }
+}
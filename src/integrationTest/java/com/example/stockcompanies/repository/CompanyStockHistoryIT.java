@@ -0,0 +1,78 @@
+package com.example.stockcompanies.repository;
+
+import com.example.stockcompanies.dto.StockHistoryPoint;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.model.CompanyStock;
+import com.example.stockcompanies.service.CompanyStocksPartitionJob;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// history range and downsampling queries against a real Postgres (date_trunc is Postgres SQL)
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyStockHistoryIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired private CompanyRepository companyRepository;
+    @Autowired private CompanyStockRepository companyStockRepository;
+    @Autowired private CompanyStocksPartitionJob partitionJob;
+
+    @Test
+    void history_range_and_last_value_per_week_and_month() {
+        // company_stocks only accepts rows for months that have a partition
+        partitionJob.createPartitions(YearMonth.of(2025, 1), YearMonth.of(2025, 2));
+        Company company = companyRepository.save(
+                new Company("History Co", "HST", "US", null, "hst@hst.com", Instant.now()));
+        // one snapshot per day from Mon 2025-01-27 to Tue 2025-02-11, value = day of month
+        for (LocalDate day = LocalDate.of(2025, 1, 27); !day.isAfter(LocalDate.of(2025, 2, 11)); day = day.plusDays(1)) {
+            companyStockRepository.save(new CompanyStock(company, day, (double) day.getDayOfMonth(), 1.0));
+        }
+
+        List<StockHistoryPoint> daily = companyStockRepository.findHistory(
+                company.getId(), LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 3));
+        assertThat(daily).extracting(StockHistoryPoint::fetchDate).containsExactly(
+                LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 2), LocalDate.of(2025, 2, 3));
+
+        // ISO weeks start on Monday: last days are Sun 02-02, Sun 02-09 and Tue 02-11 (end of range)
+        List<StockHistoryPoint> weekly = companyStockRepository.findHistoryLastPerPeriod(
+                company.getId(), LocalDate.of(2025, 1, 27), LocalDate.of(2025, 2, 11), "week");
+        assertThat(weekly).extracting(StockHistoryPoint::fetchDate).containsExactly(
+                LocalDate.of(2025, 2, 2), LocalDate.of(2025, 2, 9), LocalDate.of(2025, 2, 11));
+
+        List<StockHistoryPoint> monthly = companyStockRepository.findHistoryLastPerPeriod(
+                company.getId(), LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 28), "month");
+        assertThat(monthly).extracting(StockHistoryPoint::fetchDate).containsExactly(
+                LocalDate.of(2025, 1, 31), LocalDate.of(2025, 2, 11));
+        assertThat(monthly).extracting(StockHistoryPoint::marketCapitalization).containsExactly(31.0, 11.0);
+    }
+}
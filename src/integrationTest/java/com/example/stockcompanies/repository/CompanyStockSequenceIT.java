@@ -0,0 +1,96 @@
+package com.example.stockcompanies.repository;
+
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.model.CompanyStock;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// company_stock_seq after the migrations of a database that already had snapshots:
+// the sequence ids handed out by Hibernate (allocationSize = 50) must not reuse the stored ids
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyStockSequenceIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+
+        // runs before the context starts, so the application's Flyway applies V2 and later to these rows
+        storeSnapshotsBeforePartitioning();
+    }
+
+    @Autowired private CompanyRepository companyRepository;
+    @Autowired private CompanyStockRepository companyStockRepository;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void newSnapshots_getIdsAboveTheStoredOnes() {
+        // given - 3 snapshots of today (ids 1..3) copied over by the partitioning migration
+        List<Long> storedIds = jdbcTemplate.queryForList("select id from company_stocks order by id", Long.class);
+        assertThat(storedIds).containsExactly(1L, 2L, 3L);
+
+        // when - more snapshots of today than one id block
+        List<CompanyStock> stocks = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Company company = companyRepository.save(
+                    new Company("Sequence Co " + i, "SEQ" + i, "US", null, "seq@seq.com", Instant.now()));
+            stocks.add(new CompanyStock(company, TODAY, 1.0, 1.0));
+        }
+        List<Long> newIds = companyStockRepository.saveAllAndFlush(stocks).stream().map(CompanyStock::getId).toList();
+
+        // then - a reused id with the same fetch_date would already have failed on the primary key
+        assertThat(newIds).doesNotHaveDuplicates().allSatisfy(id -> assertThat(id).isGreaterThan(3L));
+        assertThat(jdbcTemplate.queryForObject("select count(distinct id) from company_stocks", Integer.class))
+                .isEqualTo(63);
+    }
+
+    // a database from before the partitioning: baseline schema with identity ids 1..3
+    private static void storeSnapshotsBeforePartitioning() {
+        Flyway.configure()
+                .dataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())
+                .target("1")
+                .load()
+                .migrate();
+
+        JdbcTemplate jdbc = new JdbcTemplate(
+                new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword()));
+        for (long companyId = 1001; companyId <= 1003; companyId++) {
+            // company ids far above company_seq, so they do not meet the ids of the companies saved by the test
+            jdbc.update("insert into companies (id, name, symbol, country, email, created_at) values (?, ?, ?, 'US', 'old@old.com', now())",
+                    companyId, "Old Co " + companyId, "OLD" + companyId);
+            jdbc.update("insert into company_stocks (company_id, fetch_date, market_capitalization, share_outstanding, created_at) values (?, ?, 1.0, 1.0, now())",
+                    companyId, TODAY);
+        }
+    }
+}
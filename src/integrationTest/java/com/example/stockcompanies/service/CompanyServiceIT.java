@@ -0,0 +1,95 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// symbol uniqueness enforced by uk_companies_symbol on a real Postgres
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyServiceIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired private CompanyService companyService;
+    @Autowired private CompanyRepository companyRepository;
+
+    @Test
+    void createCompany_concurrentCreatesOfOneSymbol_onlyOneSucceeds() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Company>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                Callable<Company> create = () -> {
+                    start.await();
+                    return companyService.createCompany(new Company("Race Co", "race", "us", null, "race@race.com", null));
+                };
+                results.add(executor.submit(create));
+            }
+            start.countDown();
+
+            int created = 0;
+            int conflicts = 0;
+            for (Future<Company> result : results) {
+                try {
+                    result.get();
+                    created++;
+                } catch (ExecutionException ex) {
+                    // every loser gets the 409 exception, not a raw constraint violation
+                    assertThat(ex.getCause()).isInstanceOf(DuplicateSymbolException.class)
+                            .hasMessage("Company with symbol RACE already exists");
+                    conflicts++;
+                }
+            }
+            assertThat(created).isEqualTo(1);
+            assertThat(conflicts).isEqualTo(threads - 1);
+        }
+        assertThat(companyRepository.findExistingSymbols(List.of("RACE"))).containsExactly("RACE");
+    }
+
+    @Test
+    void updateCompany_toTakenSymbol_isConflict() {
+        companyService.createCompany(new Company("Taken Co", "TKN", "US", null, "tkn@tkn.com", null));
+        Company other = companyService.createCompany(new Company("Other Co", "OTH", "US", null, "oth@oth.com", null));
+
+        assertThrows(DuplicateSymbolException.class, () -> companyService.updateCompany(other.getId(),
+                new Company("Other Co", "tkn", "US", null, "oth@oth.com", null)));
+        assertThat(companyService.getCompanyById(other.getId()).getSymbol()).isEqualTo("OTH");
+    }
+}
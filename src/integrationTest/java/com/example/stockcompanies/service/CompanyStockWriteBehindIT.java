@@ -0,0 +1,92 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.model.CompanyStock;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+// write-behind against a real Postgres: responses come back before the insert, the batch lands shortly after
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyStockWriteBehindIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+
+        registry.add("company-stocks.write-behind.enabled", () -> "true");
+        registry.add("company-stocks.write-behind.flush-interval", () -> "200ms");
+        registry.add("company-stocks.write-behind.spill-file", () -> "build/tmp/write-behind-it/company-stocks.csv");
+    }
+
+    @Autowired private CompanyStocksService companyStocksService;
+    @Autowired private CompanyRepository companyRepository;
+    @Autowired private CompanyStockRepository companyStockRepository;
+
+    @MockitoBean private FinnhubFeignClient finnhubFeignClient;
+
+    @Test
+    void fetched_snapshots_are_inserted_in_the_background() throws Exception {
+        FinnhubCompanyProfileResponse finnhub = new FinnhubCompanyProfileResponse();
+        finnhub.setMarketCapitalization(42.0);
+        finnhub.setShareOutstanding(7.0);
+        when(finnhubFeignClient.getCompanyProfile2(anyString(), anyString())).thenReturn(finnhub);
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(companyRepository.save(
+                    new Company("Queued Co " + i, "QUE" + i, "US", null, "que@que.com", Instant.now())).getId());
+        }
+
+        // the responses already have Finnhub's values
+        for (Long id : ids) {
+            assertThat(companyStocksService.getCompanyStocks(id).getMarketCapitalization()).isEqualTo(42.0);
+        }
+
+        // the rows follow within a few flush intervals, with sequence ids
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        List<CompanyStock> stored = companyStockRepository.findAll();
+        while (stored.size() < ids.size() && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            stored = companyStockRepository.findAll();
+        }
+        assertThat(stored).hasSize(ids.size());
+        assertThat(stored).allSatisfy(stock -> {
+            assertThat(stock.getId()).isNotNull();
+            assertThat(stock.getMarketCapitalization()).isEqualTo(42.0);
+        });
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+// no pooled connection is checked out while the Finnhub call is running
+// measured with Hikari's connection usage timer: the connections of the requests together are held for less
+// time than a single Finnhub call takes
+// pool of 2 and a short connection-timeout: requests blocked on Finnhub must not starve other database work
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyStocksConnectionIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "2");
+        registry.add("spring.datasource.hikari.connection-timeout", () -> "500");
+        // more concurrent Finnhub calls than pooled connections
+        registry.add("finnhub.max-concurrent-calls", () -> "4");
+    }
+
+    @Autowired private CompanyStocksService companyStocksService;
+    @Autowired private CompanyRepository companyRepository;
+    @Autowired private DataSource dataSource;
+    @Autowired private MeterRegistry meterRegistry;
+
+    @MockitoBean private FinnhubFeignClient finnhubFeignClient;
+
+    // how long every Finnhub call takes at least
+    private static final Duration FINNHUB_DELAY = Duration.ofSeconds(1);
+
+    @Test
+    void finnhub_call_runs_without_holding_a_connection() throws Exception {
+        HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        Company[] companies = new Company[4];
+        for (int i = 0; i < companies.length; i++) {
+            companies[i] = companyRepository.save(
+                    new Company("Slow Co " + i, "SLW" + i, "US", null, "slw@slw.com", Instant.now()));
+        }
+
+        // Finnhub hangs until released
+        CountDownLatch inFinnhub = new CountDownLatch(companies.length);
+        CountDownLatch release = new CountDownLatch(1);
+        FinnhubCompanyProfileResponse finnhub = new FinnhubCompanyProfileResponse();
+        finnhub.setMarketCapitalization(1.0);
+        finnhub.setShareOutstanding(2.0);
+        when(finnhubFeignClient.getCompanyProfile2(anyString(), anyString())).thenAnswer(inv -> {
+            inFinnhub.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return finnhub;
+        });
+
+        // time connections were checked out (recorded when they go back to the pool), from here on
+        Timer usage = meterRegistry.get("hikaricp.connections.usage").timer();
+        double usedMillisBefore = usage.totalTime(TimeUnit.MILLISECONDS);
+        long usesBefore = usage.count();
+
+        try (ExecutorService clients = Executors.newFixedThreadPool(companies.length)) {
+            // 4 cache misses blocked on Finnhub at once, twice the pool size
+            CompletableFuture<?>[] requests = new CompletableFuture<?>[companies.length];
+            for (int i = 0; i < companies.length; i++) {
+                Long id = companies[i].getId();
+                requests[i] = CompletableFuture.runAsync(() -> companyStocksService.getCompanyStocks(id), clients);
+            }
+            assertThat(inFinnhub.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // while they wait, nothing is checked out and other requests get a connection right away
+            assertThat(pool.getActiveConnections()).isZero();
+            long start = System.nanoTime();
+            assertThat(companyRepository.count()).isEqualTo(companies.length);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+
+            // every Finnhub call takes at least FINNHUB_DELAY
+            Thread.sleep(FINNHUB_DELAY.toMillis());
+            release.countDown();
+            CompletableFuture.allOf(requests).get(10, TimeUnit.SECONDS);
+        }
+        assertThat(pool.getActiveConnections()).isZero();
+
+        // the requests did use connections (read before and insert after the call), but briefly:
+        // one connection held across one of the 4 calls would alone take FINNHUB_DELAY
+        assertThat(usage.count()).isGreaterThan(usesBefore);
+        assertThat(usage.totalTime(TimeUnit.MILLISECONDS) - usedMillisBefore)
+                .isLessThan(FINNHUB_DELAY.toMillis() / 2.0);
+    }
+}
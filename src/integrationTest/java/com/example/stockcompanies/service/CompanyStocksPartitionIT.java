@@ -0,0 +1,117 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.model.CompanyStock;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Flyway schema (partitioned company_stocks) and the partition job against a real Postgres
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyStocksPartitionIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired private CompanyRepository companyRepository;
+    @Autowired private CompanyStockRepository companyStockRepository;
+    @Autowired private CompanyStocksPartitionJob partitionJob;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private DataSource dataSource;
+
+    @Test
+    void migration_createsPartitionsUpToMonthsAhead_andCoveringIndex() {
+        // startup run of the job: current month and the next 3 months
+        YearMonth current = YearMonth.now();
+        assertThat(partitions()).contains(partitionName(current), partitionName(current.plusMonths(3)));
+
+        String indexDefinition = jdbcTemplate.queryForObject(
+                "select indexdef from pg_indexes where indexname = 'uk_company_stock_company_date'", String.class);
+        assertThat(indexDefinition).contains("(company_id, fetch_date) INCLUDE (market_capitalization, share_outstanding)");
+    }
+
+    @Test
+    void archivePartitionsBefore_detachesOldMonthsIntoArchiveSchema() {
+        // given - snapshots in January and February 2020
+        partitionJob.createPartitions(YearMonth.of(2020, 1), YearMonth.of(2020, 2));
+        Company company = companyRepository.save(
+                new Company("Partition Co", "PRT", "US", null, "prt@prt.com", Instant.now()));
+        companyStockRepository.save(new CompanyStock(company, LocalDate.of(2020, 1, 15), 1.0, 1.0));
+        companyStockRepository.save(new CompanyStock(company, LocalDate.of(2020, 2, 15), 2.0, 1.0));
+
+        // when - keep February 2020 and later
+        List<String> archived = partitionJob.archivePartitionsBefore(YearMonth.of(2020, 2));
+
+        // then - January left company_stocks but its rows are kept in the archive schema
+        assertThat(archived).containsExactly("company_stocks_2020_01");
+        assertThat(partitions()).doesNotContain("company_stocks_2020_01").contains("company_stocks_2020_02");
+        assertThat(companyStockRepository.findHistory(company.getId(), LocalDate.of(2020, 1, 1), LocalDate.of(2020, 2, 28)))
+                .hasSize(1);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from archive.company_stocks_2020_01", Integer.class))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void maintain_isSkipped_whileAnotherInstanceHoldsTheLock() throws Exception {
+        // given - another replica in the middle of the maintenance
+        try (Connection otherInstance = dataSource.getConnection(); Statement statement = otherInstance.createStatement()) {
+            statement.execute("select pg_advisory_lock(" + CompanyStocksPartitionJob.MAINTENANCE_LOCK_KEY + ")");
+
+            // when / then
+            assertThat(partitionJob.maintain()).isFalse();
+
+            statement.execute("select pg_advisory_unlock(" + CompanyStocksPartitionJob.MAINTENANCE_LOCK_KEY + ")");
+        }
+
+        // the lock is released again after a run, so the next one gets it
+        assertThat(partitionJob.maintain()).isTrue();
+        assertThat(partitionJob.maintain()).isTrue();
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("""
+                select c.relname
+                from pg_inherits i
+                join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = 'company_stocks'::regclass
+                """, String.class);
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "company_stocks_%d_%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+}
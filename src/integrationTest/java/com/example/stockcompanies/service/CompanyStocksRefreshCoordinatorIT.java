@@ -0,0 +1,134 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// refresh leases against a real Postgres
+// every coordinator instance has its own owner id - several instances on one database act like several replicas
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("it")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class CompanyStocksRefreshCoordinatorIT {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("stockcompanies_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void datasourceProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void only_one_replica_refreshes_a_key_and_the_others_get_its_result() throws Exception {
+        int replicas = 4;
+        CompanyStockKey key = new CompanyStockKey(1L, LocalDate.of(2025, 3, 3));
+        AtomicInteger finnhubCalls = new AtomicInteger();
+        // stands in for the snapshot row the refreshing replica stores
+        AtomicReference<String> stored = new AtomicReference<>();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(replicas)) {
+            for (int i = 0; i < replicas; i++) {
+                CompanyStocksRefreshCoordinator replica = coordinator(Duration.ofSeconds(30), Duration.ofSeconds(5));
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return replica.refreshOnce(key, () -> {
+                        finnhubCalls.incrementAndGet();
+                        sleep(300);
+                        stored.set("snapshot");
+                        return "snapshot";
+                    }, () -> Optional.ofNullable(stored.get()));
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("snapshot");
+            }
+        }
+        assertThat(finnhubCalls).hasValue(1);
+    }
+
+    @Test
+    void expired_lease_of_a_crashed_replica_is_taken_over() {
+        CompanyStockKey key = new CompanyStockKey(2L, LocalDate.of(2025, 3, 3));
+        CompanyStocksRefreshCoordinator crashed = coordinator(Duration.ofMillis(500), Duration.ofMillis(200));
+        CompanyStocksRefreshCoordinator other = coordinator(Duration.ofMillis(500), Duration.ofMillis(200));
+
+        // the lease holder never stores a snapshot
+        assertThat(crashed.tryClaim(key)).isTrue();
+
+        // while the lease is valid the other replica gives up after wait-timeout
+        assertThrows(FinnhubUnavailableException.class,
+                () -> other.refreshOnce(key, () -> "refreshed", Optional::empty));
+
+        // after lease-timeout it refreshes itself
+        sleep(500);
+        assertThat(other.refreshOnce(key, () -> "refreshed", Optional::empty)).isEqualTo("refreshed");
+    }
+
+    @Test
+    void failed_refresh_releases_the_lease() {
+        CompanyStockKey key = new CompanyStockKey(3L, LocalDate.of(2025, 3, 3));
+        CompanyStocksRefreshCoordinator first = coordinator(Duration.ofSeconds(30), Duration.ofMillis(200));
+        CompanyStocksRefreshCoordinator second = coordinator(Duration.ofSeconds(30), Duration.ofMillis(200));
+
+        assertThrows(IllegalStateException.class, () -> first.refreshOnce(key, () -> {
+            throw new IllegalStateException("Finnhub returned empty response");
+        }, Optional::empty));
+
+        // no waiting for the 30s lease
+        assertThat(second.tryClaim(key)).isTrue();
+    }
+
+    private CompanyStocksRefreshCoordinator coordinator(Duration leaseTimeout, Duration waitTimeout) {
+        return new CompanyStocksRefreshCoordinator(jdbcTemplate, transactionManager, new SimpleMeterRegistry(),
+                true, leaseTimeout, waitTimeout, Duration.ofMillis(50));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.repository.CompanyRepository;
 import com.example.stockcompanies.repository.CompanyStockRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -52,6 +53,8 @@ class CompanyStocksServiceIT {
     @Autowired private CompanyRepository companyRepository;
     @Autowired private CompanyStockRepository companyStockRepository;
 
+    @Autowired private MeterRegistry meterRegistry;
+
     @MockitoBean private FinnhubFeignClient finnhubFeignClient;
 
     @Test
@@ -86,5 +89,15 @@ class CompanyStocksServiceIT {
         assertThat(second.getMarketCapitalization()).isEqualTo(111.0);
         assertThat(second.getShareOutstanding()).isEqualTo(22.0);
         verifyNoMoreInteractions(finnhubFeignClient);
+
+        // repository calls are timed per repository and method
+        assertThat(meterRegistry.get("spring.data.repository.invocations")
+                .tag("repository", "CompanyRepository")
+                .tag("method", "findStockView")
+                .timer().count()).isGreaterThanOrEqualTo(1);
+        assertThat(meterRegistry.get("company.stocks.cache.lookups")
+                .tag("level", "database")
+                .tag("result", "miss")
+                .counter().count()).isEqualTo(1.0);
     }
 }
\ No newline at end of file
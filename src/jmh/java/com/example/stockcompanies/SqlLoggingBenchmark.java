@@ -0,0 +1,110 @@
+package com.example.stockcompanies;
+
+import com.example.stockcompanies.dto.CompanyStockView;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// throughput of the stock read query (CompanyRepository.findStockView) against in-memory H2, per logging setup
+// - defaults: the settings application.properties used to have - show_sql + format_sql, SQL DEBUG, bind TRACE
+// - prod: the prod profile - async structured logging, only sampled slow queries
+// log output goes to build/jmh-logs/<setup>.log instead of the console
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class SqlLoggingBenchmark {
+
+    @Param({"defaults", "prod"})
+    public String logging;
+
+    private PrintStream originalOut;
+    private PrintStream logFile;
+    private ConfigurableApplicationContext context;
+    private CompanyRepository companyRepository;
+    private Long companyId;
+
+    // JPA repositories and entities of the application, no web layer and no Feign
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class PersistenceOnly {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // show_sql writes to System.out and the console appender too - send both to a file
+        Path logs = Files.createDirectories(Path.of("build", "jmh-logs"));
+        originalOut = System.out;
+        logFile = new PrintStream(new FileOutputStream(logs.resolve(logging + ".log").toFile()), false);
+        System.setOut(logFile);
+
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:logging-bench;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                // the Flyway migrations are Postgres SQL
+                "--spring.flyway.enabled=false"));
+        if (logging.equals("prod")) {
+            args.add("--spring.profiles.active=prod");
+        } else {
+            args.addAll(List.of(
+                    "--spring.jpa.show-sql=true",
+                    "--spring.jpa.properties.hibernate.format_sql=true",
+                    "--logging.level.org.hibernate.SQL=DEBUG",
+                    "--logging.level.org.hibernate.orm.jdbc.bind=TRACE"));
+        }
+
+        context = new SpringApplicationBuilder(PersistenceOnly.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+        companyRepository = context.getBean(CompanyRepository.class);
+        companyId = companyRepository.save(
+                new Company("Apple Inc", "AAPL", "US", "https://apple.com", "ir@apple.com", Instant.now())).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        System.setOut(originalOut);
+        logFile.close();
+    }
+
+    @Benchmark
+    public Optional<CompanyStockView> findStockView() {
+        return companyRepository.findStockView(companyId, LocalDate.now());
+    }
+}
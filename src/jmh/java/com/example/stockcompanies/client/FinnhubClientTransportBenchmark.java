@@ -0,0 +1,112 @@
+package com.example.stockcompanies.client;
+
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import feign.Client;
+import feign.Feign;
+import feign.hc5.ApacheHttp5Client;
+import feign.http2client.Http2Client;
+import feign.jackson.JacksonDecoder;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+// repeated profile2 calls against a local WireMock Finnhub, per Feign transport
+// - default: Feign's HttpURLConnection client (what the app used before the pooled transport)
+// - hc5: Apache HttpClient 5 with a keep-alive connection pool (the app default now)
+// - http2: JDK HttpClient
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class FinnhubClientTransportBenchmark {
+
+    @Param({"default", "hc5", "http2"})
+    public String transport;
+
+    private WireMockServer wireMock;
+    private CloseableHttpClient pooledHttpClient;
+    private FinnhubFeignClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        wireMock = new WireMockServer(wireMockConfig().dynamicPort().containerThreads(32));
+        wireMock.start();
+        wireMock.stubFor(get(urlPathEqualTo("/stock/profile2"))
+                .willReturn(okJson("""
+                        {
+                          "country": "US",
+                          "currency": "USD",
+                          "exchange": "NASDAQ NMS - GLOBAL MARKET",
+                          "name": "Apple Inc",
+                          "ticker": "AAPL",
+                          "marketCapitalization": 1415993,
+                          "shareOutstanding": 4375.47
+                        }
+                        """)));
+
+        // same contract and decoding as the Spring Cloud client, only the transport differs
+        client = Feign.builder()
+                .client(transportClient())
+                .contract(new SpringMvcContract())
+                .decoder(new JacksonDecoder())
+                .target(FinnhubFeignClient.class, "http://localhost:" + wireMock.port());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (pooledHttpClient != null) {
+            pooledHttpClient.close();
+        }
+        wireMock.stop();
+    }
+
+    @Benchmark
+    public FinnhubCompanyProfileResponse profile2() {
+        return client.getCompanyProfile2("AAPL", "benchmark-token");
+    }
+
+    private Client transportClient() {
+        return switch (transport) {
+            case "default" -> new Client.Default(null, null);
+            case "hc5" -> {
+                // same pool limits as spring.cloud.openfeign.httpclient.* in application.properties
+                pooledHttpClient = HttpClients.custom()
+                        .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                                .setMaxConnTotal(200)
+                                .setMaxConnPerRoute(50)
+                                .build())
+                        .build();
+                yield new ApacheHttp5Client(pooledHttpClient);
+            }
+            case "http2" -> new Http2Client();
+            default -> throw new IllegalArgumentException("Unknown transport " + transport);
+        };
+    }
+}
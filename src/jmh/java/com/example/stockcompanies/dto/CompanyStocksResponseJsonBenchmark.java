@@ -0,0 +1,53 @@
+package com.example.stockcompanies.dto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// JSON serialization of the stock endpoint response (what the HTTP message converter does per request)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompanyStocksResponseJsonBenchmark {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    private CompanyStocksResponse response;
+
+    @Setup
+    public void setUp() {
+        response = CompanyStocksResponse.builder()
+                .id(1L)
+                .name("Apple Inc")
+                .country("US")
+                .symbol("AAPL")
+                .website("https://apple.com")
+                .email("ir@apple.com")
+                .createdAt(Instant.now())
+                .marketCapitalization(1415993.0)
+                .shareOutstanding(4375.47)
+                .fetchDate(LocalDate.now())
+                .build();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
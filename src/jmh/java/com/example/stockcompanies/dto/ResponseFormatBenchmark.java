@@ -0,0 +1,154 @@
+package com.example.stockcompanies.dto;
+
+import com.example.stockcompanies.model.Company;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+import tools.jackson.dataformat.smile.SmileMapper;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// encoding and decoding cost of the API responses per negotiated format
+// single: one CompanyStocksResponse (GET /company-stocks/{id}) or one Company
+// list: 100 of them (a POST /company-stocks/batch answer, a default GET /companies page)
+// payload sizes do not change between runs, they are printed once per trial
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseFormatBenchmark {
+
+    private static final int LIST_SIZE = 100;
+    private static final Field COMPANY_ID = ReflectionUtils.findField(Company.class, "id");
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    private ObjectMapper mapper;
+    private ObjectReader stocksListReader;
+    private ObjectReader companiesListReader;
+
+    private CompanyStocksResponse stock;
+    private List<CompanyStocksResponse> stocks;
+    private Company company;
+    private List<Company> companies;
+
+    private byte[] stockBytes;
+    private byte[] stocksBytes;
+    private byte[] companyBytes;
+    private byte[] companiesBytes;
+
+    @Setup
+    public void setUp() {
+        // the same mappers the Spring MVC converters use for application/json, x-jackson-smile and cbor
+        mapper = switch (format) {
+            case "json" -> JsonMapper.builder().build();
+            case "smile" -> SmileMapper.builder().build();
+            case "cbor" -> CBORMapper.builder().build();
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        stocksListReader = mapper.readerForListOf(CompanyStocksResponse.class);
+        companiesListReader = mapper.readerForListOf(Company.class);
+
+        stocks = new ArrayList<>(LIST_SIZE);
+        companies = new ArrayList<>(LIST_SIZE);
+        for (long id = 1; id <= LIST_SIZE; id++) {
+            stocks.add(stockResponse(id));
+            companies.add(company(id));
+        }
+        stock = stocks.getFirst();
+        company = companies.getFirst();
+
+        stockBytes = mapper.writeValueAsBytes(stock);
+        stocksBytes = mapper.writeValueAsBytes(stocks);
+        companyBytes = mapper.writeValueAsBytes(company);
+        companiesBytes = mapper.writeValueAsBytes(companies);
+        System.out.printf("%n[%s] payload bytes: stock %d, %d stocks %d, company %d, %d companies %d%n",
+                format, stockBytes.length, LIST_SIZE, stocksBytes.length,
+                companyBytes.length, LIST_SIZE, companiesBytes.length);
+    }
+
+    @Benchmark
+    public byte[] serializeStock() {
+        return mapper.writeValueAsBytes(stock);
+    }
+
+    @Benchmark
+    public byte[] serializeStockList() {
+        return mapper.writeValueAsBytes(stocks);
+    }
+
+    @Benchmark
+    public CompanyStocksResponse deserializeStock() {
+        return mapper.readValue(stockBytes, CompanyStocksResponse.class);
+    }
+
+    @Benchmark
+    public List<CompanyStocksResponse> deserializeStockList() {
+        return stocksListReader.readValue(stocksBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeCompany() {
+        return mapper.writeValueAsBytes(company);
+    }
+
+    @Benchmark
+    public byte[] serializeCompanyList() {
+        return mapper.writeValueAsBytes(companies);
+    }
+
+    @Benchmark
+    public Company deserializeCompany() {
+        return mapper.readValue(companyBytes, Company.class);
+    }
+
+    @Benchmark
+    public List<Company> deserializeCompanyList() {
+        return companiesListReader.readValue(companiesBytes);
+    }
+
+    private static CompanyStocksResponse stockResponse(long id) {
+        return CompanyStocksResponse.builder()
+                .id(id)
+                .name("Company " + id + " Inc")
+                .country("US")
+                .symbol("SYM" + id)
+                .website("https://company" + id + ".example.com")
+                .email("ir@company" + id + ".example.com")
+                .createdAt(Instant.now())
+                .marketCapitalization(1415993.0 + id)
+                .shareOutstanding(4375.47 + id)
+                .fetchDate(LocalDate.now())
+                .build();
+    }
+
+    private static Company company(long id) {
+        Company company = new Company("Company " + id + " Inc", "SYM" + id, "US",
+                "https://company" + id + ".example.com", "ir@company" + id + ".example.com", Instant.now());
+        // ids are normally assigned by the sequence
+        ReflectionUtils.makeAccessible(COMPANY_ID);
+        ReflectionUtils.setField(COMPANY_ID, company, id);
+        return company;
+    }
+}
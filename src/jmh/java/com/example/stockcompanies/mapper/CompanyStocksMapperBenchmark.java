@@ -0,0 +1,78 @@
+package com.example.stockcompanies.mapper;
+
+import com.example.stockcompanies.dto.CompanyStockView;
+import com.example.stockcompanies.dto.CompanyStocksResponse;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.model.CompanyStock;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// cost of building one CompanyStocksResponse from a company and its snapshot
+// - twoPass: the previous toResponse - fromCompany + fromStock DTOs copied into a third one
+// - singlePass: the current toResponse - one builder filled from both sources
+// - view: the projection used by getCompanyStocks
+// run with the gc profiler and compare gc.alloc.rate.norm (bytes per call):
+// ./gradlew jmh -PjmhIncludes=CompanyStocksMapperBenchmark -PjmhProfilers=gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompanyStocksMapperBenchmark {
+
+    private final CompanyStocksMapper mapper = Mappers.getMapper(CompanyStocksMapper.class);
+
+    private Company company;
+    private CompanyStock stock;
+    private CompanyStockView view;
+
+    @Setup
+    public void setUp() {
+        company = new Company("Apple Inc", "AAPL", "US", "https://apple.com", "ir@apple.com", Instant.now());
+        stock = new CompanyStock(company, LocalDate.now(), 1415993.0, 4375.47);
+        view = new CompanyStockView(1L, "Apple Inc", "AAPL", "US", "https://apple.com", "ir@apple.com",
+                Instant.now(), 0L, LocalDate.now(), 1415993.0, 4375.47);
+    }
+
+    @Benchmark
+    public CompanyStocksResponse view() {
+        return mapper.toResponse(view);
+    }
+
+    @Benchmark
+    public CompanyStocksResponse singlePass() {
+        return mapper.toResponse(company, stock);
+    }
+
+    @Benchmark
+    public CompanyStocksResponse twoPass() {
+        CompanyStocksResponse base = mapper.fromCompany(company);
+        CompanyStocksResponse s = mapper.fromStock(stock);
+        return CompanyStocksResponse.builder()
+                .id(base.getId())
+                .name(base.getName())
+                .country(base.getCountry())
+                .symbol(base.getSymbol())
+                .website(base.getWebsite())
+                .email(base.getEmail())
+                .createdAt(base.getCreatedAt())
+                .marketCapitalization(s.getMarketCapitalization())
+                .shareOutstanding(s.getShareOutstanding())
+                .fetchDate(s.getFetchDate())
+                .build();
+    }
+}
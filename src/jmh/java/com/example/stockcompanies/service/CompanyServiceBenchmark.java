@@ -0,0 +1,45 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.model.Company;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// CompanyService.createCompany - validation, trimming/upper-casing and the insert (the unique index checks the symbol)
+// the repository keeps nothing, so every call takes the full create path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompanyServiceBenchmark {
+
+    private CompanyService companyService;
+
+    @Setup
+    public void setUp() {
+        InMemoryRepositories repositories = new InMemoryRepositories(false);
+        companyService = new CompanyService(
+                repositories.companyRepository(),
+                new CompanyStocksCache(1, Duration.ofSeconds(1)),
+                null);
+    }
+
+    @Benchmark
+    public Company createCompany() {
+        // new entity per call - normalization updates it in place
+        return companyService.createCompany(new Company(
+                "  Apple Inc ", " aapl ", " us ", " https://apple.com ", " ir@apple.com ", null));
+    }
+}
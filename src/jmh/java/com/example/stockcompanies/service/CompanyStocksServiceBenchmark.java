@@ -0,0 +1,135 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.client.ResilientFinnhubClient;
+import com.example.stockcompanies.dto.CompanyStocksResponse;
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.mapper.CompanyStocksMapper;
+import com.example.stockcompanies.model.Company;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+// CompanyStocksService.getCompanyStocks without a database or network
+// - cacheHit: answered from the in-memory cache
+// - database: cache miss, today's snapshot found by the (in-memory) repository
+// - finnhub: no snapshot, the stubbed Finnhub client is called through the call gate, limiter and breaker, then saved
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompanyStocksServiceBenchmark {
+
+    private static final long COMPANY_ID = 1L;
+
+    @Param({"cacheHit", "database", "finnhub"})
+    public String path;
+
+    private FinnhubCallExecutor finnhubCallExecutor;
+    private CompanyStocksService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryRepositories repositories = new InMemoryRepositories(!path.equals("finnhub"));
+        repositories.addCompany(COMPANY_ID,
+                new Company("Apple Inc", "AAPL", "US", "https://apple.com", "ir@apple.com", Instant.now()));
+
+        FinnhubCompanyProfileResponse profile = new FinnhubCompanyProfileResponse();
+        profile.setMarketCapitalization(1415993.0);
+        profile.setShareOutstanding(4375.47);
+        FinnhubFeignClient finnhub = (symbol, token) -> profile;
+
+        // limits high enough to never reject during a run
+        ResilientFinnhubClient resilientClient = new ResilientFinnhubClient(finnhub, new SimpleMeterRegistry(),
+                Integer.MAX_VALUE, Duration.ofSeconds(1), Duration.ZERO,
+                50, 20, 10, Duration.ofSeconds(30));
+        finnhubCallExecutor = new FinnhubCallExecutor(FinnhubCallExecutor.Mode.PLATFORM, 8, Duration.ofSeconds(2));
+
+        service = new CompanyStocksService(
+                repositories.companyRepository(),
+                repositories.companyStockRepository(),
+                resilientClient,
+                Mappers.getMapper(CompanyStocksMapper.class),
+                path.equals("cacheHit") ? new CompanyStocksCache(10_000, Duration.ofHours(1)) : new DisabledCache(),
+                finnhubCallExecutor,
+                new CompanyStocksMetrics(new SimpleMeterRegistry()),
+                new NoTransactionManager(),
+                // disabled - the finnhub path measures the insert in the request
+                new CompanyStockWriteBehind(null, null, null, new SimpleMeterRegistry(), false,
+                        50, Duration.ofMillis(500), 1, 1, Duration.ZERO, Path.of("build", "write-behind.csv"), Duration.ZERO),
+                // disabled - one instance
+                new CompanyStocksRefreshCoordinator(null, null, new SimpleMeterRegistry(), false,
+                        Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofMillis(200)));
+        InMemoryRepositories.setField(service, "apiKey", "benchmark-token");
+
+        // stores today's snapshot (database path) and fills the cache (cacheHit path)
+        service.getCompanyStocks(COMPANY_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        finnhubCallExecutor.shutdown();
+    }
+
+    @Benchmark
+    public CompanyStocksResponse getCompanyStocks() {
+        return service.getCompanyStocks(COMPANY_ID);
+    }
+
+    // always misses, so every call goes past the in-memory cache
+    private static final class DisabledCache extends CompanyStocksCache {
+
+        private DisabledCache() {
+            super(1, Duration.ofSeconds(1));
+        }
+
+        @Override
+        public CompanyStocksResponse get(CompanyStockKey key) {
+            return null;
+        }
+
+        @Override
+        public void put(CompanyStockKey key, CompanyStocksResponse response) {
+        }
+    }
+
+    // the in-memory repositories have no transactions to begin or commit
+    private static final class NoTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
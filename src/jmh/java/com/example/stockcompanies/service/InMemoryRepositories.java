@@ -0,0 +1,102 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.CompanyStockView;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.model.CompanyStock;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// map-backed repositories for the benchmarks, so they measure the service code and not a database
+// only the methods the benchmarked paths call are implemented
+final class InMemoryRepositories {
+
+    private final Map<Long, Company> companies = new ConcurrentHashMap<>();
+    private final Map<CompanyStockKey, CompanyStock> stocks = new ConcurrentHashMap<>();
+
+    // false -> saved companies and snapshots are not kept, every read misses (fetch/create path on every call)
+    private final boolean retain;
+
+    InMemoryRepositories(boolean retain) {
+        this.retain = retain;
+    }
+
+    // stored regardless of retain - the companies the benchmark reads
+    Company addCompany(Long id, Company company) {
+        setField(company, "id", id);
+        companies.put(id, company);
+        return company;
+    }
+
+    CompanyRepository companyRepository() {
+        return proxy(CompanyRepository.class, (name, args) -> switch (name) {
+            case "findStockView" -> findStockView((Long) args[0], (LocalDate) args[1]);
+            case "getReferenceById" -> companies.get((Long) args[0]);
+            case "saveAndFlush" -> saveCompany((Company) args[0]);
+            default -> throw new UnsupportedOperationException(name);
+        });
+    }
+
+    CompanyStockRepository companyStockRepository() {
+        return proxy(CompanyStockRepository.class, (name, args) -> switch (name) {
+            case "findByCompanyIdAndFetchDate" ->
+                    Optional.ofNullable(stocks.get(new CompanyStockKey((Long) args[0], (LocalDate) args[1])));
+            case "save" -> saveStock((CompanyStock) args[0]);
+            default -> throw new UnsupportedOperationException(name);
+        });
+    }
+
+    private Optional<CompanyStockView> findStockView(Long companyId, LocalDate fetchDate) {
+        Company c = companies.get(companyId);
+        if (c == null) {
+            return Optional.empty();
+        }
+        CompanyStockView view = new CompanyStockView(c.getId(), c.getName(), c.getSymbol(), c.getCountry(),
+                c.getWebsite(), c.getEmail(), c.getCreatedAt(), c.getVersion(), null, null, null);
+        CompanyStock stock = stocks.get(new CompanyStockKey(companyId, fetchDate));
+        return Optional.of(stock == null ? view : view.withStock(stock));
+    }
+
+    private Company saveCompany(Company company) {
+        if (retain) {
+            addCompany((long) companies.size() + 1, company);
+        }
+        return company;
+    }
+
+    private CompanyStock saveStock(CompanyStock stock) {
+        if (retain) {
+            stocks.put(new CompanyStockKey(stock.getCompany().getId(), stock.getFetchDate()), stock);
+        }
+        return stock;
+    }
+
+    static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(String methodName, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "toString" -> "InMemory" + type.getSimpleName();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> handler.invoke(method.getName(), args);
+                });
+    }
+}
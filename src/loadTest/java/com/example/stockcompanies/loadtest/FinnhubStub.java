@@ -0,0 +1,81 @@
+package com.example.stockcompanies.loadtest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformerV2;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+// WireMock in place of Finnhub profile2, with log-normal latency and a share of 503 answers
+final class FinnhubStub implements AutoCloseable {
+
+    private final WireMockServer server;
+
+    private FinnhubStub(WireMockServer server) {
+        this.server = server;
+    }
+
+    static FinnhubStub start(LoadTestConfig config) {
+        WireMockServer server = new WireMockServer(wireMockConfig()
+                .dynamicPort()
+                // enough request threads that the stub never becomes the bottleneck
+                .containerThreads(400)
+                .extensions(new RandomErrors(config.finnhubErrorRate())));
+        server.start();
+        server.stubFor(get(urlPathEqualTo("/stock/profile2"))
+                .willReturn(okJson("""
+                        {
+                          "country": "US",
+                          "currency": "USD",
+                          "name": "Load Test Inc",
+                          "marketCapitalization": 1415993,
+                          "shareOutstanding": 4375.47
+                        }
+                        """)
+                        .withLogNormalRandomDelay(config.finnhubMedianLatency().toMillis(), config.finnhubLatencySigma())));
+        return new FinnhubStub(server);
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.stop();
+    }
+
+    // turns the given share of responses into 503s (same delay as a normal answer)
+    private static final class RandomErrors implements ResponseDefinitionTransformerV2 {
+
+        private final double errorRate;
+
+        private RandomErrors(double errorRate) {
+            this.errorRate = errorRate;
+        }
+
+        @Override
+        public ResponseDefinition transform(ServeEvent serveEvent) {
+            ResponseDefinition response = serveEvent.getResponseDefinition();
+            if (ThreadLocalRandom.current().nextDouble() >= errorRate) {
+                return response;
+            }
+            return ResponseDefinitionBuilder.like(response).but()
+                    .withStatus(503)
+                    .withBody("{\"error\":\"injected by load test\"}")
+                    .build();
+        }
+
+        @Override
+        public String getName() {
+            return "random-errors";
+        }
+    }
+}
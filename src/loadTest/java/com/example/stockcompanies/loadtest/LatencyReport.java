@@ -0,0 +1,80 @@
+package com.example.stockcompanies.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// latency (microseconds, measured from the scheduled start - includes queueing) and errors per operation
+final class LatencyReport {
+
+    // up to one minute, 3 significant digits
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Histogram total = newHistogram();
+    private final LongAdder totalErrors = new LongAdder();
+
+    void record(String operation, long latencyNanos, boolean success) {
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_MICROS);
+        histograms.computeIfAbsent(operation, name -> newHistogram()).recordValue(micros);
+        total.recordValue(micros);
+        if (!success) {
+            errors.computeIfAbsent(operation, name -> new LongAdder()).increment();
+            totalErrors.increment();
+        }
+    }
+
+    void print(PrintStream out, Duration elapsed) {
+        out.printf("%-22s %9s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        new TreeMap<>(histograms).forEach((name, histogram) ->
+                printRow(out, name, histogram, errorCount(name), elapsed));
+        printRow(out, "TOTAL", total, totalErrors.sum(), elapsed);
+    }
+
+    // summary plus the full HdrHistogram percentile distribution (values in ms), e.g. for HdrHistogram's plotter
+    Path write(Path directory, String runName, Duration elapsed) throws IOException {
+        Files.createDirectories(directory);
+        Path summary = directory.resolve(runName + "-summary.txt");
+        try (PrintStream out = new PrintStream(Files.newOutputStream(summary))) {
+            print(out, elapsed);
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(runName + ".hgrm")))) {
+            total.outputPercentileDistribution(out, 1000.0);
+        }
+        return summary;
+    }
+
+    private long errorCount(String name) {
+        LongAdder count = errors.get(name);
+        return count == null ? 0 : count.sum();
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram histogram, long errors, Duration elapsed) {
+        out.printf("%-22s %9d %8d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                name,
+                histogram.getTotalCount(),
+                errors,
+                histogram.getTotalCount() / (elapsed.toNanos() / 1e9),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private static Histogram newHistogram() {
+        return new ConcurrentHistogram(HIGHEST_MICROS, 3);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.stockcompanies.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// load test settings, read from -Dloadtest.* system properties (./gradlew loadTest -Ploadtest.rate=300 ...)
+record LoadTestConfig(
+        // stocks, companies or mixed
+        String mix,
+        // open model - requests started per second, independent of how fast the app answers
+        int rate,
+        Duration warmup,
+        Duration duration,
+        // companies created before the run
+        int companies,
+        // Finnhub stub - log-normal latency around the median, share of calls answered with 503
+        Duration finnhubMedianLatency,
+        double finnhubLatencySigma,
+        double finnhubErrorRate,
+        // extra application arguments, e.g. "--spring.profiles.active=prod --finnhub.execution.mode=virtual"
+        List<String> appArgs) {
+
+    static LoadTestConfig fromSystemProperties() {
+        LoadTestConfig config = new LoadTestConfig(
+                property("loadtest.mix", "mixed"),
+                Integer.parseInt(property("loadtest.rate", "100")),
+                DurationStyle.detectAndParse(property("loadtest.warmup", "15s")),
+                DurationStyle.detectAndParse(property("loadtest.duration", "60s")),
+                Integer.parseInt(property("loadtest.companies", "500")),
+                DurationStyle.detectAndParse(property("loadtest.finnhub.median-latency", "80ms")),
+                Double.parseDouble(property("loadtest.finnhub.latency-sigma", "0.4")),
+                Double.parseDouble(property("loadtest.finnhub.error-rate", "0.02")),
+                Arrays.stream(property("loadtest.app-args", "").split("\\s+"))
+                        .filter(arg -> !arg.isBlank())
+                        .toList());
+        if (config.rate() < 1) {
+            throw new IllegalArgumentException("loadtest.rate must be positive");
+        }
+        if (config.companies() < 1) {
+            throw new IllegalArgumentException("loadtest.companies must be positive");
+        }
+        if (config.finnhubErrorRate() < 0 || config.finnhubErrorRate() > 1) {
+            throw new IllegalArgumentException("loadtest.finnhub.error-rate must be between 0 and 1");
+        }
+        return config;
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
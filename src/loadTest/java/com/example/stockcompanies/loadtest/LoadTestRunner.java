@@ -0,0 +1,165 @@
+package com.example.stockcompanies.loadtest;
+
+import com.example.stockcompanies.StockCompaniesApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+// drives the application with an open-model workload (./gradlew loadTest)
+// - Postgres in Testcontainers, Finnhub replaced by WireMock with latency and error injection
+// - the app runs in this JVM on a random port, with the normal configuration plus loadtest.app-args
+// - requests start at Poisson-distributed times at loadtest.rate per second, whether or not earlier ones finished,
+//   and latency is measured from the scheduled start, so a slow app shows up as latency and not as a lower rate
+// - results: console table and build/reports/loadtest/<mix>-<time>-summary.txt / .hgrm
+public final class LoadTestRunner {
+
+    private static final int IMPORT_CHUNK = 1000;
+
+    private final LoadTestConfig config;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private String baseUrl;
+
+    private LoadTestRunner(LoadTestConfig config) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestRunner(LoadTestConfig.fromSystemProperties()).run();
+    }
+
+    private void run() throws Exception {
+        try (PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+             FinnhubStub finnhub = FinnhubStub.start(config)) {
+            postgres.start();
+            try (ConfigurableApplicationContext app = startApplication(postgres, finnhub)) {
+                baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+
+                Workload workload = Workload.of(config.mix(), seedCompanies());
+                System.out.printf("Warm-up: %s at %d req/s%n", config.warmup(), config.rate());
+                drive(workload, config.warmup());
+
+                System.out.printf("Measuring: %s at %d req/s, mix=%s%n", config.duration(), config.rate(), config.mix());
+                long start = System.nanoTime();
+                LatencyReport report = drive(workload, config.duration());
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+                report.print(System.out, elapsed);
+                String runName = config.mix() + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+                Path summary = report.write(Path.of("build", "reports", "loadtest"), runName, elapsed);
+                System.out.println("Report written to " + summary.toAbsolutePath());
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext startApplication(PostgreSQLContainer<?> postgres, FinnhubStub finnhub) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                "--spring.datasource.username=" + postgres.getUsername(),
+                "--spring.datasource.password=" + postgres.getPassword(),
+                "--finnhub.base-url=" + finnhub.baseUrl(),
+                "--finnhub.api-key=load-test",
+                // the stub has no plan limit - the rate limiter would only measure itself
+                "--finnhub.rate-limit.limit-for-period=1000000"));
+        // given last, so they override the defaults above
+        args.addAll(config.appArgs());
+        return new SpringApplicationBuilder(StockCompaniesApplication.class).run(args.toArray(String[]::new));
+    }
+
+    // creates loadtest.companies companies through the bulk endpoint and reads back their ids
+    private List<Workload.SeededCompany> seedCompanies() throws IOException, InterruptedException {
+        for (int from = 0; from < config.companies(); from += IMPORT_CHUNK) {
+            List<String> rows = new ArrayList<>();
+            for (int i = from; i < Math.min(from + IMPORT_CHUNK, config.companies()); i++) {
+                rows.add(Workload.companyJson("Seed " + i, "SEED" + i));
+            }
+            HttpResponse<String> response = send("POST", "/companies/bulk", "[" + String.join(",", rows) + "]");
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Seeding failed: " + response.statusCode() + " " + response.body());
+            }
+        }
+
+        List<Workload.SeededCompany> companies = new ArrayList<>();
+        long after = 0;
+        while (true) {
+            HttpResponse<String> response = send("GET", "/companies?after=" + after + "&limit=1000", null);
+            JsonNode page = objectMapper.readTree(response.body());
+            if (page.isEmpty()) {
+                break;
+            }
+            for (JsonNode company : page) {
+                after = company.get("id").asLong();
+                companies.add(new Workload.SeededCompany(after, company.get("symbol").asString()));
+            }
+        }
+        System.out.printf("Seeded %d companies%n", companies.size());
+        return companies;
+    }
+
+    // open model - one virtual thread per request, started on schedule
+    private LatencyReport drive(Workload workload, Duration duration) {
+        LatencyReport report = new LatencyReport();
+        double meanIntervalNanos = 1e9 / config.rate();
+        long end = System.nanoTime() + duration.toNanos();
+        long next = System.nanoTime();
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (next < end) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                long scheduled = next;
+                Workload.Operation operation = workload.next();
+                requests.submit(() -> {
+                    boolean success;
+                    try {
+                        int status = send(operation.method(), operation.path(), operation.body()).statusCode();
+                        success = status < 400;
+                    } catch (IOException ex) {
+                        success = false;
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    report.record(operation.name(), System.nanoTime() - scheduled, success);
+                });
+                // Poisson arrivals - exponential gaps with the configured mean
+                next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanIntervalNanos);
+            }
+        } // close() waits for the requests still running
+        return report;
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30));
+        if (body != null) {
+            request.header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(body));
+        } else {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
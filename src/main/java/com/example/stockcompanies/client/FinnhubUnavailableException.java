@@ -0,0 +1,18 @@
+package com.example.stockcompanies.client;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// thrown when a Finnhub call is not attempted because the upstream is overloaded or unhealthy
+// @ResponseStatus -> the client gets 503 Service Unavailable instead of 500
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class FinnhubUnavailableException extends RuntimeException {
+
+    public FinnhubUnavailableException(String message) {
+        super(message);
+    }
+
+    public FinnhubUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
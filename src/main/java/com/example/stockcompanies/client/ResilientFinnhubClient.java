@@ -0,0 +1,132 @@
+package com.example.stockcompanies.client;
+
+import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import feign.FeignException;
+import feign.RetryableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRateLimiterMetrics;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// FinnhubFeignClient with a rate limiter and a circuit breaker in front of it
+// - rate limiter: token bucket sized to the Finnhub plan (limit-for-period calls per refresh-period)
+// - circuit breaker: opens on 429, 5xx and timeouts, then rejects calls until Finnhub recovers
+// rejected calls throw FinnhubUnavailableException, so callers can serve stored snapshots instead
+@Component
+public class ResilientFinnhubClient {
+
+    private static final String NAME = "finnhub";
+
+    private final FinnhubFeignClient delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final RateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+
+    public ResilientFinnhubClient(
+            FinnhubFeignClient delegate,
+            MeterRegistry meterRegistry,
+            @Value("${finnhub.rate-limit.limit-for-period:60}") int limitForPeriod,
+            @Value("${finnhub.rate-limit.refresh-period:1m}") Duration refreshPeriod,
+            @Value("${finnhub.rate-limit.timeout:500ms}") Duration limiterTimeout,
+            @Value("${finnhub.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${finnhub.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${finnhub.circuit-breaker.minimum-number-of-calls:10}") int minimumNumberOfCalls,
+            @Value("${finnhub.circuit-breaker.wait-duration-in-open-state:30s}") Duration waitInOpenState) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(limitForPeriod)
+                .limitRefreshPeriod(refreshPeriod)
+                .timeoutDuration(limiterTimeout)
+                .build());
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(NAME);
+
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(waitInOpenState)
+                .recordException(ResilientFinnhubClient::isUpstreamFailure)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(NAME);
+
+        // resilience4j.circuitbreaker.* and resilience4j.ratelimiter.* meters tagged with name=finnhub
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedRateLimiterMetrics.ofRateLimiterRegistry(rateLimiterRegistry).bindTo(meterRegistry);
+    }
+
+    public FinnhubCompanyProfileResponse getCompanyProfile2(String symbol, String token) {
+        // breaker outside the limiter - an open breaker does not use up rate limit permits
+        Supplier<FinnhubCompanyProfileResponse> call = CircuitBreaker.decorateSupplier(circuitBreaker,
+                RateLimiter.decorateSupplier(rateLimiter, () -> timedCall(symbol, token)));
+        try {
+            return call.get();
+        } catch (CallNotPermittedException ex) {
+            throw new FinnhubUnavailableException("Finnhub circuit breaker is open", ex);
+        } catch (RequestNotPermitted ex) {
+            throw new FinnhubUnavailableException("Finnhub rate limit reached", ex);
+        }
+    }
+
+    // the HTTP call itself, timed as finnhub.requests{outcome, status}
+    // calls rejected by the breaker or the limiter never get here, they show up in the resilience4j meters
+    private FinnhubCompanyProfileResponse timedCall(String symbol, String token) {
+        long start = System.nanoTime();
+        int status = 200;
+        try {
+            return delegate.getCompanyProfile2(symbol, token);
+        } catch (FeignException ex) {
+            // status is -1 for I/O errors and timeouts
+            status = ex.status();
+            throw ex;
+        } catch (RuntimeException ex) {
+            status = -1;
+            throw ex;
+        } finally {
+            Timer.builder("finnhub.requests")
+                    .description("Finnhub profile2 calls")
+                    .tag("outcome", outcome(status))
+                    .tag("status", status > 0 ? String.valueOf(status) : "IO_ERROR")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public CircuitBreaker.State circuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    private static String outcome(int status) {
+        if (status <= 0) {
+            return "UNKNOWN";
+        }
+        if (status < 400) {
+            return "SUCCESS";
+        }
+        return status < 500 ? "CLIENT_ERROR" : "SERVER_ERROR";
+    }
+
+    // 429 (plan limit), 5xx and I/O errors/timeouts count as failures, other 4xx answers do not
+    private static boolean isUpstreamFailure(Throwable ex) {
+        if (ex instanceof RetryableException) {
+            return true;
+        }
+        return ex instanceof FeignException feign && (feign.status() == 429 || feign.status() >= 500);
+    }
+}
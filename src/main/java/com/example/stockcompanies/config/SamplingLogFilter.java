@@ -0,0 +1,37 @@
+package com.example.stockcompanies.config;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// logback filter that lets through only every rate-th event of one logger, other loggers are not affected
+// used in logback-spring.xml for org.hibernate.SQL_SLOW, so a burst of slow queries does not flood the logs
+public class SamplingLogFilter extends Filter<ILoggingEvent> {
+
+    private final AtomicLong seen = new AtomicLong();
+    private String loggerName;
+    private int rate = 1;
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (!event.getLoggerName().equals(loggerName)) {
+            return FilterReply.NEUTRAL;
+        }
+        // first event is always logged, then one of every rate events
+        return seen.getAndIncrement() % rate == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    // setters are called by logback for the <loggerName> and <rate> elements
+    public void setLoggerName(String loggerName) {
+        this.loggerName = loggerName;
+    }
+
+    public void setRate(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.rate = rate;
+    }
+}
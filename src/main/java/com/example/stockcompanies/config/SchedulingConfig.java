@@ -0,0 +1,10 @@
+package com.example.stockcompanies.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// @EnableScheduling -> Spring runs the @Scheduled methods of the background jobs
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
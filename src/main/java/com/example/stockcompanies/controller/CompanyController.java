@@ -1,30 +1,53 @@
 package com.example.stockcompanies.controller;
 
+import com.example.stockcompanies.dto.BulkImportResponse;
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.service.CompanyService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 // RestController combines @Controller and @ResponseBody
-// returns JSON directly
+// returns JSON directly (CBOR or Smile when the Accept header asks for them)
 @RestController
 // all endpoints in this controller start with /companies
 @RequestMapping("/companies")
 @RequiredArgsConstructor
 public class CompanyController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     // Constructor injection ensures that the dependency will always be available, allowing the field to be immutable
     private final CompanyService companyService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${companies.import.chunk-size:500}")
+    private int importChunkSize;
 
     // POST /companies
     // when method completes successfully returns HTTP status 201 Created
@@ -34,9 +57,93 @@ public class CompanyController {
         return companyService.createCompany(company);
     }
 
+    // POST /companies/bulk with a JSON array
+    // all companies are created in one transaction, or none when a row is invalid
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public BulkImportResponse importCompanies(@RequestBody List<Company> companies) {
+        return BulkImportResponse.builder()
+                .created(companyService.importCompanies(companies, 1))
+                .build();
+    }
+
+    // POST /companies/bulk with NDJSON (one company per line), for uploads too large for one request body in memory
+    // lines are read while they arrive and imported in chunks, each chunk in its own transaction
+    // on an invalid row the earlier chunks stay committed; the error message has the row number to resume from
+    @PostMapping(value = "/bulk", consumes = NDJSON)
+    @ResponseStatus(HttpStatus.CREATED)
+    public BulkImportResponse importCompaniesStream(InputStream body) {
+        int created = 0;
+        long firstRow = 1;
+        List<Company> chunk = new ArrayList<>(importChunkSize);
+        try (MappingIterator<Company> rows = objectMapper.readerFor(Company.class).readValues(body)) {
+            while (rows.hasNextValue()) {
+                chunk.add(rows.nextValue());
+                if (chunk.size() == importChunkSize) {
+                    created += companyService.importCompanies(chunk, firstRow);
+                    firstRow += chunk.size();
+                    chunk = new ArrayList<>(importChunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty() || created == 0) {
+            created += companyService.importCompanies(chunk, firstRow);
+        }
+        return BulkImportResponse.builder()
+                .created(created)
+                .build();
+    }
+
+    // GET /companies?after={lastSeenId}&limit={n}
+    // one keyset page ordered by id; when the page is full the Link header points to the next page
+    // ETag of the whole page - If-None-Match with it is answered with 304 and no body
     @GetMapping
-    public List<Company> getAllCompanies() {
-        return companyService.getAllCompanies();
+    public ResponseEntity<List<Company>> getCompanies(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        List<Company> page = companyService.getCompaniesPage(after, limit);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(pageETag(page))
+                // companies change at any time - caches may keep the page, but have to revalidate it
+                .cacheControl(CacheControl.noCache())
+                // JSON, CBOR or Smile depending on Accept
+                .varyBy(HttpHeaders.ACCEPT);
+        if (!page.isEmpty() && page.size() == companyService.pageSize(limit)) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.getLast().getId())
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
+
+    // GET /companies/stream -> all companies as NDJSON (one JSON object per line)
+    // rows are written while they are read from the database, nothing is collected in memory
+    @GetMapping(value = "/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamCompanies() {
+        StreamingResponseBody body = out -> companyService.forEachCompany(company -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(company));
+                out.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
+    // collection validator - the page body depends only on which companies it holds and their versions
+    // (every update increments Company.version), so a hash of the id:version pairs changes exactly when the body does
+    // weak (W/) for the same reason as the stock ETag: one validator for the JSON, CBOR and Smile bodies
+    private static String pageETag(List<Company> page) {
+        StringBuilder ids = new StringBuilder(page.size() * 12);
+        for (Company company : page) {
+            ids.append(company.getId()).append(':').append(company.getVersion()).append(',');
+        }
+        return "W/\"" + DigestUtils.md5DigestAsHex(ids.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
     }
 
     @PutMapping("/{id}")
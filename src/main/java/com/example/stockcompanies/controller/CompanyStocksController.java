@@ -1,14 +1,30 @@
 package com.example.stockcompanies.controller;
 
+import com.example.stockcompanies.dto.CompanyStocksHistoryResponse;
 import com.example.stockcompanies.dto.CompanyStocksResponse;
+import com.example.stockcompanies.service.CompanyStocksCache;
+import com.example.stockcompanies.service.CompanyStocksHistoryService;
 import com.example.stockcompanies.service.CompanyStocksService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-// @RestController returns JSON
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// @RestController returns JSON (CBOR or Smile when the Accept header asks for them)
 @RestController
 // all endpoints in this controller start with /company-stocks
 @RequestMapping("/company-stocks")
@@ -17,10 +33,74 @@ public class CompanyStocksController {
 
     // Constructor injection ensures that the dependency will always be available, allowing the field to be immutable
     private final CompanyStocksService companyStocksService;
+    private final CompanyStocksHistoryService companyStocksHistoryService;
+
+    // upper bound for max-age, so clients and CDNs pick up company changes within this time
+    @Value("${company-stocks.http-cache.max-age:1h}")
+    private Duration maxAge;
 
     //@GetMapping("/{companyId}") -> gets companyId from URL and returns CompanyStocksResponse which contains Company and stock data
+    // with ETag and Cache-Control; If-None-Match with the current ETag is answered with 304 and no body
     @GetMapping("/{companyId}")
-    public CompanyStocksResponse getCompanyStocks(@PathVariable Long companyId) {
-        return companyStocksService.getCompanyStocks(companyId);
+    public ResponseEntity<CompanyStocksResponse> getCompanyStocks(@PathVariable Long companyId) {
+        return cacheable(companyStocksService.getCompanyStocks(companyId));
+    }
+
+    // GET /company-stocks/{companyId}/async -> same response, but the servlet thread is released while
+    // Finnhub is called; after company-stocks.async.timeout the most recent stored snapshot is returned
+    @GetMapping("/{companyId}/async")
+    public CompletableFuture<ResponseEntity<CompanyStocksResponse>> getCompanyStocksAsync(@PathVariable Long companyId) {
+        return companyStocksService.getCompanyStocksAsync(companyId).thenApply(this::cacheable);
+    }
+
+    // GET /company-stocks/{companyId}/history?from=2025-01-01&to=2025-12-31&interval=week
+    // stored snapshots in the range as parallel lists of dates and values
+    // interval: day (default), week or month (last snapshot of every week or month)
+    @GetMapping("/{companyId}/history")
+    public CompanyStocksHistoryResponse getCompanyStocksHistory(
+            @PathVariable Long companyId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String interval) {
+        return companyStocksHistoryService.getHistory(companyId, from, to, interval);
+    }
+
+    // POST /company-stocks/batch with a JSON array of company ids in the body
+    // returns the stock data of all found companies in one response, in request order
+    @PostMapping("/batch")
+    public List<CompanyStocksResponse> getCompanyStocksBatch(@RequestBody List<Long> companyIds) {
+        return companyStocksService.getCompanyStocksBatch(companyIds);
+    }
+
+    // a snapshot does not change during its fetch_date, so the content is fully determined by
+    // company id, company version, fetch date and the stale flag -> ETag from those
+    // weak (W/): the JSON, CBOR and Smile bodies carry the same content but are not the same bytes
+    // Spring compares it with If-None-Match and sends 304 without serializing the body;
+    // responses from CompanyStocksCache get there without any repository call
+    private ResponseEntity<CompanyStocksResponse> cacheable(CompanyStocksResponse response) {
+        return ResponseEntity.ok()
+                .eTag(eTag(response))
+                .cacheControl(cacheControl(response))
+                // JSON, CBOR or Smile depending on Accept - caches keep one copy per format
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(response);
+    }
+
+    private CacheControl cacheControl(CompanyStocksResponse response) {
+        if (response.isStale() || response.getFetchDate() == null) {
+            // older snapshot served while today's one is missing - caches have to revalidate every time
+            return CacheControl.noCache();
+        }
+        // reusable until the rollover to the next day's snapshot, but at most max-age
+        Duration untilRollover = CompanyStocksCache.untilRollover(response.getFetchDate());
+        return CacheControl.maxAge(untilRollover.compareTo(maxAge) < 0 ? untilRollover : maxAge).cachePublic();
+    }
+
+    private static String eTag(CompanyStocksResponse response) {
+        return "W/\"" + response.getId()
+                + "-" + response.getFetchDate()
+                + "-v" + response.getCompanyVersion()
+                + (response.isStale() ? "-stale" : "")
+                + "\"";
     }
 }
@@ -0,0 +1,16 @@
+package com.example.stockcompanies.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+// result of POST /companies/bulk
+@Getter
+@Builder
+@Jacksonized
+public class BulkImportResponse {
+
+    // number of companies created
+    private int created;
+
+}
@@ -0,0 +1,37 @@
+package com.example.stockcompanies.dto;
+
+import com.example.stockcompanies.model.CompanyStock;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+// company columns plus the columns of one of its stock snapshots, read in a single query
+// the stock fields are null when the company has no snapshot for the requested day
+public record CompanyStockView(
+        Long companyId,
+        String name,
+        String symbol,
+        String country,
+        String website,
+        String email,
+        Instant createdAt,
+        Long companyVersion,
+        LocalDate fetchDate,
+        Double marketCapitalization,
+        Double shareOutstanding) {
+
+    public boolean hasStock() {
+        return fetchDate != null;
+    }
+
+    // same company, values of another snapshot
+    public CompanyStockView withStock(CompanyStock stock) {
+        return new CompanyStockView(companyId, name, symbol, country, website, email, createdAt, companyVersion,
+                stock.getFetchDate(), stock.getMarketCapitalization(), stock.getShareOutstanding());
+    }
+
+    public CompanyStockView withStock(StockSnapshot stock) {
+        return new CompanyStockView(companyId, name, symbol, country, website, email, createdAt, companyVersion,
+                stock.fetchDate(), stock.marketCapitalization(), stock.shareOutstanding());
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.stockcompanies.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// stock history of one company in columnar form
+// the lists are parallel - index i of every list belongs to the same day,
+// so field names are written once per response instead of once per point
+@Getter
+@Builder
+@Jacksonized
+public class CompanyStocksHistoryResponse {
+
+    private Long companyId;
+    private LocalDate from;
+    private LocalDate to;
+    // day, week or month - for week and month every point is the last snapshot of that period
+    private String interval;
+
+    private List<LocalDate> dates;
+    private List<Double> marketCapitalization;
+    private List<Double> shareOutstanding;
+
+}
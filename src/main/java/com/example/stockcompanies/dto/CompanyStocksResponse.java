@@ -1,16 +1,18 @@
 package com.example.stockcompanies.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.extern.jackson.Jacksonized;
 
 import java.time.Instant;
+import java.time.LocalDate;
 
 // CompanyStocksResponse is the DTO class that the endpoint returns to the client
 // it combines data from database (Company) and Finnhub or cache (CompanyStock)
 // Lombok annotations
 @Getter
-@Builder
+@Builder(toBuilder = true)
 @Jacksonized
 public class CompanyStocksResponse {
 
@@ -28,4 +30,14 @@ public class CompanyStocksResponse {
     private Double marketCapitalization;
     private Double shareOutstanding;
 
+    // freshness - the day the stock data belongs to
+    // stale is true when an older snapshot is served while today's data is being fetched
+    private LocalDate fetchDate;
+    private boolean stale;
+
+    // version of the company row the fields were read from, not part of the body
+    // CompanyStocksController derives the ETag from id, fetchDate and this version
+    @JsonIgnore
+    private Long companyVersion;
+
 }
@@ -0,0 +1,7 @@
+package com.example.stockcompanies.dto;
+
+import java.time.LocalDate;
+
+// one stored snapshot of a company, as read by the history queries
+public record StockHistoryPoint(LocalDate fetchDate, Double marketCapitalization, Double shareOutstanding) {
+}
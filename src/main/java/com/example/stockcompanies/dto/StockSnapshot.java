@@ -0,0 +1,15 @@
+package com.example.stockcompanies.dto;
+
+import com.example.stockcompanies.model.CompanyStock;
+
+import java.time.LocalDate;
+
+// the values of one daily snapshot, without the entity
+// a fetched snapshot queued for the write-behind has no CompanyStock (and needs no company reference) yet
+public record StockSnapshot(Long companyId, LocalDate fetchDate, Double marketCapitalization, Double shareOutstanding) {
+
+    public static StockSnapshot of(CompanyStock stock) {
+        return new StockSnapshot(stock.getCompany().getId(), stock.getFetchDate(),
+                stock.getMarketCapitalization(), stock.getShareOutstanding());
+    }
+}
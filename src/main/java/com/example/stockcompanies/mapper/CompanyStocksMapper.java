@@ -1,7 +1,9 @@
 package com.example.stockcompanies.mapper;
 
+import com.example.stockcompanies.dto.CompanyStockView;
 import com.example.stockcompanies.dto.CompanyStocksResponse;
 import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.dto.StockSnapshot;
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.model.CompanyStock;
 import org.mapstruct.Mapper;
@@ -13,6 +15,9 @@ public interface CompanyStocksMapper {
     // base mapping от db entity -> DTO
     @Mapping(target = "marketCapitalization", ignore = true)
     @Mapping(target = "shareOutstanding", ignore = true)
+    @Mapping(target = "fetchDate", ignore = true)
+    @Mapping(target = "stale", ignore = true)
+    @Mapping(target = "companyVersion", source = "version")
     CompanyStocksResponse fromCompany(Company company);
 
     // create a new DTO from stock
@@ -23,6 +28,8 @@ public interface CompanyStocksMapper {
     @Mapping(target = "website", ignore = true)
     @Mapping(target = "email", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "stale", ignore = true)
+    @Mapping(target = "companyVersion", ignore = true)
     CompanyStocksResponse fromStock(CompanyStock stock);
 
     // create a new DTO from Finnhub
@@ -33,42 +40,59 @@ public interface CompanyStocksMapper {
     @Mapping(target = "website", ignore = true)
     @Mapping(target = "email", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "fetchDate", ignore = true)
+    @Mapping(target = "stale", ignore = true)
+    @Mapping(target = "companyVersion", ignore = true)
     CompanyStocksResponse fromFinnhub(FinnhubCompanyProfileResponse finnhub);
 
-    // convenience methods
-    default CompanyStocksResponse toResponse(Company company, CompanyStock stock) {
-        CompanyStocksResponse base = fromCompany(company);
-        if (stock == null) return base;
+    // single query read path - company and stock columns come in one view, mapped in one pass
+    @Mapping(target = "id", source = "companyId")
+    @Mapping(target = "stale", ignore = true)
+    CompanyStocksResponse toResponse(CompanyStockView view);
 
-        CompanyStocksResponse s = fromStock(stock);
-        return CompanyStocksResponse.builder()
-                .id(base.getId())
-                .name(base.getName())
-                .country(base.getCountry())
-                .symbol(base.getSymbol())
-                .website(base.getWebsite())
-                .email(base.getEmail())
-                .createdAt(base.getCreatedAt())
-                .marketCapitalization(s.getMarketCapitalization())
-                .shareOutstanding(s.getShareOutstanding())
-                .build();
-    }
+    // company + stored snapshot in one pass - the builder is filled directly from both sources,
+    // no intermediate DTOs (runs on every stock request); without a stock only the company fields are set
+    @Mapping(target = "id", source = "company.id")
+    @Mapping(target = "name", source = "company.name")
+    @Mapping(target = "country", source = "company.country")
+    @Mapping(target = "symbol", source = "company.symbol")
+    @Mapping(target = "website", source = "company.website")
+    @Mapping(target = "email", source = "company.email")
+    @Mapping(target = "createdAt", source = "company.createdAt")
+    @Mapping(target = "companyVersion", source = "company.version")
+    @Mapping(target = "marketCapitalization", source = "stock.marketCapitalization")
+    @Mapping(target = "shareOutstanding", source = "stock.shareOutstanding")
+    @Mapping(target = "fetchDate", source = "stock.fetchDate")
+    @Mapping(target = "stale", ignore = true)
+    CompanyStocksResponse toResponse(Company company, CompanyStock stock);
 
-    default CompanyStocksResponse toResponse(Company company, FinnhubCompanyProfileResponse finnhub) {
-        CompanyStocksResponse base = fromCompany(company);
-        if (finnhub == null) return base;
+    // company + fetched snapshot values (the snapshot may still be queued for the write-behind)
+    @Mapping(target = "id", source = "company.id")
+    @Mapping(target = "name", source = "company.name")
+    @Mapping(target = "country", source = "company.country")
+    @Mapping(target = "symbol", source = "company.symbol")
+    @Mapping(target = "website", source = "company.website")
+    @Mapping(target = "email", source = "company.email")
+    @Mapping(target = "createdAt", source = "company.createdAt")
+    @Mapping(target = "companyVersion", source = "company.version")
+    @Mapping(target = "marketCapitalization", source = "stock.marketCapitalization")
+    @Mapping(target = "shareOutstanding", source = "stock.shareOutstanding")
+    @Mapping(target = "fetchDate", source = "stock.fetchDate")
+    @Mapping(target = "stale", ignore = true)
+    CompanyStocksResponse toResponse(Company company, StockSnapshot stock);
 
-        CompanyStocksResponse f = fromFinnhub(finnhub);
-        return CompanyStocksResponse.builder()
-                .id(base.getId())
-                .name(base.getName())
-                .country(base.getCountry())
-                .symbol(base.getSymbol())
-                .website(base.getWebsite())
-                .email(base.getEmail())
-                .createdAt(base.getCreatedAt())
-                .marketCapitalization(f.getMarketCapitalization())
-                .shareOutstanding(f.getShareOutstanding())
-                .build();
-    }
+    // company + Finnhub answer in one pass
+    @Mapping(target = "id", source = "company.id")
+    @Mapping(target = "name", source = "company.name")
+    @Mapping(target = "country", source = "company.country")
+    @Mapping(target = "symbol", source = "company.symbol")
+    @Mapping(target = "website", source = "company.website")
+    @Mapping(target = "email", source = "company.email")
+    @Mapping(target = "createdAt", source = "company.createdAt")
+    @Mapping(target = "companyVersion", source = "company.version")
+    @Mapping(target = "marketCapitalization", source = "finnhub.marketCapitalization")
+    @Mapping(target = "shareOutstanding", source = "finnhub.shareOutstanding")
+    @Mapping(target = "fetchDate", ignore = true)
+    @Mapping(target = "stale", ignore = true)
+    CompanyStocksResponse toResponse(Company company, FinnhubCompanyProfileResponse finnhub);
 }
@@ -8,6 +8,10 @@ import jakarta.persistence.Id;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -22,8 +26,8 @@ import java.util.Objects;
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 //create entity for the database
 @Entity
-// set table name
-@Table(name = "companies")
+// set table name, the symbol constraint is named so CompanyService can recognize its violations
+@Table(name = "companies", uniqueConstraints = @UniqueConstraint(name = "uk_companies_symbol", columnNames = "symbol"))
 public class Company {
     //primary key
     @Id
@@ -35,7 +39,7 @@ public class Company {
     @Column(nullable = false)
     private String name;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String symbol;
 
     @Column(nullable = false)
@@ -50,6 +54,13 @@ public class Company {
     @Column(nullable = false, updatable = false)
     private Instant createdAt;
 
+    // incremented on every update - the HTTP validators (ETag) of company responses are derived from it
+    // not part of the JSON body, clients cannot set it
+    @Version
+    @Column(nullable = false)
+    @JsonIgnore
+    private Long version;
+
     @PrePersist
     protected void onCreate() {
         if (this.createdAt == null) {
@@ -9,6 +9,7 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import lombok.AccessLevel;
@@ -28,7 +29,9 @@ import java.util.Objects;
 
 public class CompanyStock {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // ids in blocks of 50 - unlike IDENTITY this keeps Hibernate's JDBC insert batching on
+    @SequenceGenerator(name = "company_stock_seq", sequenceName = "company_stock_seq", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "company_stock_seq")
     private Long id;
 
     // FetchType.LAZY -> when loading CompanyStock, Hibernate does NOT automatically load Company until you need it
@@ -1,12 +1,52 @@
 package com.example.stockcompanies.repository;
 
+import com.example.stockcompanies.dto.CompanyStockView;
 import com.example.stockcompanies.model.Company;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
 // repository layer for Company entity that provides CRUD operations and db access
 @Repository
 //extends JpaRepository<Company, Long> -> Entity is Company type, primary key is type Long
 public interface CompanyRepository extends JpaRepository<Company, Long> {
-    boolean existsBySymbol(String symbol);
+    // which of the given symbols are already taken - one IN query for a whole import
+    @Query("select c.symbol from Company c where c.symbol in :symbols")
+    Set<String> findExistingSymbols(@Param("symbols") Collection<String> symbols);
+
+    // company and its snapshot for the day in one round trip (left join - stock columns are null without a snapshot)
+    // columns are read straight into the view, no managed entities are created
+    @Query("""
+            select new com.example.stockcompanies.dto.CompanyStockView(
+                c.id, c.name, c.symbol, c.country, c.website, c.email, c.createdAt, c.version,
+                s.fetchDate, s.marketCapitalization, s.shareOutstanding)
+            from Company c
+            left join CompanyStock s on s.company = c and s.fetchDate = :fetchDate
+            where c.id = :companyId""")
+    Optional<CompanyStockView> findStockView(@Param("companyId") Long companyId,
+                                             @Param("fetchDate") LocalDate fetchDate);
+
+    // keyset page - next companies after the given id, ordered by id
+    List<Company> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // whole table as a JDBC cursor - rows are fetched in chunks while the stream is consumed
+    // must be consumed inside a transaction and closed afterwards
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from Company c order by c.id")
+    Stream<Company> streamAllOrderedById();
 }
\ No newline at end of file
@@ -1,11 +1,18 @@
 package com.example.stockcompanies.repository;
 
+import com.example.stockcompanies.dto.StockHistoryPoint;
 import com.example.stockcompanies.model.CompanyStock;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 // repository layer for Company entity that provides CRUD operations and db access
 @Repository
@@ -13,5 +20,48 @@ import java.util.Optional;
 public interface CompanyStockRepository extends JpaRepository<CompanyStock, Long> {
     // cache lookup - find today's snapshot for a company
     Optional<CompanyStock> findByCompanyIdAndFetchDate(Long companyId, LocalDate fetchDate);
-}
 
+    // batch cache lookup - today's snapshots for many companies in one IN query
+    List<CompanyStock> findByCompanyIdInAndFetchDate(Collection<Long> companyIds, LocalDate fetchDate);
+
+    // most recent stored snapshot of a company (any day), loaded together with its company
+    @EntityGraph(attributePaths = "company")
+    Optional<CompanyStock> findFirstByCompanyIdOrderByFetchDateDesc(Long companyId);
+
+    // most recent stored snapshot of each of the given companies (any day) in one query - the batch fallback
+    @Query("""
+            select s from CompanyStock s
+            where s.company.id in :companyIds and s.fetchDate = (
+                select max(p.fetchDate) from CompanyStock p where p.company.id = s.company.id)""")
+    List<CompanyStock> findLatestByCompanyIdIn(@Param("companyIds") Collection<Long> companyIds);
+
+    // which of the given companies already have a snapshot for the date (ids only, no entities)
+    @Query("select s.company.id from CompanyStock s where s.company.id in :companyIds and s.fetchDate = :fetchDate")
+    Set<Long> findCompanyIdsWithSnapshot(@Param("companyIds") Collection<Long> companyIds,
+                                         @Param("fetchDate") LocalDate fetchDate);
+
+    // daily history - range scan on the (company_id, fetch_date) unique index, only the needed columns
+    @Query("""
+            select new com.example.stockcompanies.dto.StockHistoryPoint(s.fetchDate, s.marketCapitalization, s.shareOutstanding)
+            from CompanyStock s
+            where s.company.id = :companyId and s.fetchDate between :from and :to
+            order by s.fetchDate""")
+    List<StockHistoryPoint> findHistory(@Param("companyId") Long companyId,
+                                        @Param("from") LocalDate from,
+                                        @Param("to") LocalDate to);
+
+    // downsampled history - the last snapshot of every period (unit is a date_trunc unit: 'week' or 'month')
+    // the subquery picks the last fetch date per period, both lookups use the (company_id, fetch_date) index
+    @Query("""
+            select new com.example.stockcompanies.dto.StockHistoryPoint(s.fetchDate, s.marketCapitalization, s.shareOutstanding)
+            from CompanyStock s
+            where s.company.id = :companyId and s.fetchDate in (
+                select max(p.fetchDate) from CompanyStock p
+                where p.company.id = :companyId and p.fetchDate between :from and :to
+                group by function('date_trunc', :unit, p.fetchDate))
+            order by s.fetchDate""")
+    List<StockHistoryPoint> findHistoryLastPerPeriod(@Param("companyId") Long companyId,
+                                                     @Param("from") LocalDate from,
+                                                     @Param("to") LocalDate to,
+                                                     @Param("unit") String unit);
+}
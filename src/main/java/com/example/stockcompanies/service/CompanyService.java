@@ -2,46 +2,134 @@ package com.example.stockcompanies.service;
 
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.repository.CompanyRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class CompanyService {
+
+    private static final String SYMBOL_CONSTRAINT = "uk_companies_symbol";
     // Constructor injection ensures that the dependency will always be available, allowing the field to be immutable
     private final CompanyRepository companyRepository;
+    private final CompanyStocksCache companyStocksCache;
+    private final EntityManager entityManager;
+
+    @Value("${companies.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${companies.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${companies.import.max-size:1000}")
+    private int maxImportSize;
 
     public Company createCompany(Company company) {
         if (company == null) {
             throw new IllegalArgumentException("Company body is required");
         }
-        // requireNonBlank -> ensures that the value is not null and is not an empty string
-        String name = requireNonBlank(company.getName(), "Name is required").trim();
-        String country = requireNonBlank(company.getCountry(), "Country is required").trim().toUpperCase();
-        String symbol = requireNonBlank(company.getSymbol(), "Symbol is required").trim().toUpperCase();
-        String email = requireNonBlank(company.getEmail(), "Email is required").trim();
+        String symbol = normalizeNewCompany(company);
+
+        // createdAt should be set by @PrePersist in Company
+        // record company in db - no existsBySymbol check first, the unique index decides (also between concurrent creates)
+        return saveWithUniqueSymbol(company, symbol);
+    }
 
-        if (companyRepository.existsBySymbol(symbol)) {
-            throw new IllegalStateException("Company with symbol " + symbol + " already exists");
+    // creates many companies in one transaction, with the same validation as createCompany
+    // firstRow is the row number of the first company, used in error messages
+    // symbols are checked with one IN query and the inserts are sent in JDBC batches (hibernate.jdbc.batch_size)
+    @Transactional
+    public int importCompanies(List<Company> companies, long firstRow) {
+        if (companies == null || companies.isEmpty()) {
+            throw new IllegalArgumentException("Companies are required");
+        }
+        if (companies.size() > maxImportSize) {
+            throw new IllegalArgumentException("At most " + maxImportSize + " companies are allowed per import");
         }
-        // recording normalized values in the entity
-        company.updateName(name);
-        company.updateCountry(country);
-        company.updateSymbol(symbol);
-        company.updateEmail(email);
 
-        if (company.getWebsite() != null) {
-            company.updateWebsite(company.getWebsite().trim());
+        Set<String> symbols = new LinkedHashSet<>();
+        for (int i = 0; i < companies.size(); i++) {
+            long row = firstRow + i;
+            Company company = companies.get(i);
+            if (company == null) {
+                throw new IllegalArgumentException("Row " + row + ": Company body is required");
+            }
+            String symbol;
+            try {
+                symbol = normalizeNewCompany(company);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Row " + row + ": " + ex.getMessage(), ex);
+            }
+            // duplicates inside the import itself
+            if (!symbols.add(symbol)) {
+                throw new IllegalStateException("Row " + row + ": Symbol " + symbol + " appears more than once");
+            }
         }
-        // createdAt should be set by @PrePersist in Company
-        // record company in db
-        return companyRepository.save(company);
+
+        // one set-based query, so the error names every taken symbol at once
+        // a concurrent create of one of them is still caught by the unique index below
+        Set<String> existing = companyRepository.findExistingSymbols(symbols);
+        if (!existing.isEmpty()) {
+            throw new DuplicateSymbolException("Companies with symbols " + new TreeSet<>(existing) + " already exist");
+        }
+
+        try {
+            companyRepository.saveAll(companies);
+            // flush here so a violation is translated below and not at commit
+            companyRepository.flush();
+        } catch (DataIntegrityViolationException ex) {
+            if (isSymbolViolation(ex)) {
+                throw new DuplicateSymbolException("A company with one of the symbols was created concurrently", ex);
+            }
+            throw ex;
+        }
+        return companies.size();
     }
 
-    public List<Company> getAllCompanies() {
-        return companyRepository.findAll();
+    // keyset page - companies with id greater than afterId, ordered by id
+    // cost does not grow with the page number like OFFSET does
+    public List<Company> getCompaniesPage(Long afterId, Integer limit) {
+        return companyRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId == null ? 0L : afterId,
+                Limit.of(pageSize(limit)));
+    }
+
+    // requested page size, default when missing, capped at the max size
+    public int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    // passes every company to the consumer, reading the table through a cursor
+    // each company is detached after use, so memory stays flat no matter how big the table is
+    @Transactional(readOnly = true)
+    public void forEachCompany(Consumer<Company> consumer) {
+        try (Stream<Company> companies = companyRepository.streamAllOrderedById()) {
+            companies.forEach(company -> {
+                consumer.accept(company);
+                entityManager.detach(company);
+            });
+        }
     }
 
     public Company updateCompany(Long id, Company updatedData) {
@@ -58,10 +146,6 @@ public class CompanyService {
         String country = requireNonBlank(updatedData.getCountry(), "Country is required").trim().toUpperCase();
         String symbol = requireNonBlank(updatedData.getSymbol(), "Symbol is required").trim().toUpperCase();
         String email = requireNonBlank(updatedData.getEmail(), "Email is required").trim();
-        // checking for unique symbol
-        if (!symbol.equalsIgnoreCase(existing.getSymbol()) && companyRepository.existsBySymbol(symbol)) {
-            throw new IllegalStateException("Company with symbol " + symbol + " already exists");
-        }
 
         existing.updateName(name);
         existing.updateCountry(country);
@@ -69,7 +153,27 @@ public class CompanyService {
         existing.updateEmail(email);
         // website can be null
         existing.updateWebsite(updatedData.getWebsite() != null ? updatedData.getWebsite().trim() : null);
-        return companyRepository.save(existing);
+        // unique symbol is checked by the unique index
+        Company saved = saveWithUniqueSymbol(existing, symbol);
+        // cached stock responses contain the old company fields - dropped once the new version is visible,
+        // the cache also refuses responses with an older version that were read in the meantime
+        Long version = saved.getVersion();
+        afterCommit(() -> companyStocksCache.companyChanged(id, version));
+        return saved;
+    }
+
+    // after the caller's transaction commits, right away when there is none
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     public Company getCompanyById(Long id) {
@@ -77,6 +181,50 @@ public class CompanyService {
                 .orElseThrow(() -> new IllegalStateException("Company with id " + id + " not found"));
     }
 
+    // insert or update in one round trip; a taken symbol comes back as a uk_companies_symbol violation -> 409
+    private Company saveWithUniqueSymbol(Company company, String symbol) {
+        try {
+            // flush now, so the violation is thrown here and not later at commit
+            return companyRepository.saveAndFlush(company);
+        } catch (DataIntegrityViolationException ex) {
+            if (isSymbolViolation(ex)) {
+                throw new DuplicateSymbolException("Company with symbol " + symbol + " already exists", ex);
+            }
+            throw ex;
+        }
+    }
+
+    // Hibernate reports the violated constraint name (H2 adds a suffix to it, Postgres does not)
+    private static boolean isSymbolViolation(DataIntegrityViolationException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                String constraint = violation.getConstraintName();
+                return constraint != null && constraint.toLowerCase().contains(SYMBOL_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+    // validates and normalizes a new company in place, returns the normalized symbol
+    private String normalizeNewCompany(Company company) {
+        // requireNonBlank -> ensures that the value is not null and is not an empty string
+        String name = requireNonBlank(company.getName(), "Name is required").trim();
+        String country = requireNonBlank(company.getCountry(), "Country is required").trim().toUpperCase();
+        String symbol = requireNonBlank(company.getSymbol(), "Symbol is required").trim().toUpperCase();
+        String email = requireNonBlank(company.getEmail(), "Email is required").trim();
+
+        // recording normalized values in the entity
+        company.updateName(name);
+        company.updateCountry(country);
+        company.updateSymbol(symbol);
+        company.updateEmail(email);
+
+        if (company.getWebsite() != null) {
+            company.updateWebsite(company.getWebsite().trim());
+        }
+        return symbol;
+    }
+
     private String requireNonBlank(String value, String message) {
         if (value == null || value.trim().isEmpty()) {
             throw new IllegalArgumentException(message);
@@ -0,0 +1,7 @@
+package com.example.stockcompanies.service;
+
+import java.time.LocalDate;
+
+// identifies one daily snapshot - the same pair is unique in company_stocks (uk_company_stock_company_date)
+public record CompanyStockKey(Long companyId, LocalDate fetchDate) {
+}
@@ -0,0 +1,391 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.StockSnapshot;
+import com.example.stockcompanies.model.CompanyStock;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// write-behind for fetched CompanyStock snapshots (company-stocks.write-behind.enabled)
+// - the request returns as soon as Finnhub answers, the snapshot is queued instead of inserted
+// - one background thread inserts the queue in JDBC batches: when batch-size snapshots are waiting,
+//   or flush-interval after the first one arrived
+// - a failed batch is retried max-attempts times, then appended to spill-file; the file is replayed on the next start
+//   and deleted only after its snapshots were flushed
+// - on shutdown the queue is flushed (or spilled when the database is not reachable)
+@Slf4j
+@Component
+public class CompanyStockWriteBehind {
+
+    private static final String DUPLICATE_CONSTRAINT = "uk_company_stock_company_date";
+
+    private final CompanyRepository companyRepository;
+    private final CompanyStockRepository companyStockRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Path spillFile;
+    // spill file of an earlier run while its snapshots are flushed again
+    private final Path replayingFile;
+    // spilled lines that cannot be read back, kept for a manual look
+    private final Path rejectedFile;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<StockSnapshot> queue;
+    private final Counter saved;
+    private final Counter duplicates;
+    private final Counter failed;
+    private final Counter spilled;
+
+    private volatile boolean stopping;
+    private Thread flusher;
+
+    public CompanyStockWriteBehind(
+            CompanyRepository companyRepository,
+            CompanyStockRepository companyStockRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${company-stocks.write-behind.enabled:false}") boolean enabled,
+            @Value("${company-stocks.write-behind.batch-size:50}") int batchSize,
+            @Value("${company-stocks.write-behind.flush-interval:500ms}") Duration flushInterval,
+            @Value("${company-stocks.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${company-stocks.write-behind.max-attempts:3}") int maxAttempts,
+            @Value("${company-stocks.write-behind.retry-backoff:1s}") Duration retryBackoff,
+            @Value("${company-stocks.write-behind.spill-file:write-behind/company-stocks.csv}") Path spillFile,
+            @Value("${company-stocks.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        if (batchSize < 1 || queueCapacity < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("company-stocks.write-behind batch-size, queue-capacity and max-attempts must be positive");
+        }
+        this.companyRepository = companyRepository;
+        this.companyStockRepository = companyStockRepository;
+        this.transactionManager = transactionManager;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.spillFile = spillFile;
+        this.replayingFile = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+        this.rejectedFile = spillFile.resolveSibling(spillFile.getFileName() + ".rejected");
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("company.stocks.write-behind.queue", queue, BlockingQueue::size)
+                .description("Snapshots waiting to be inserted")
+                .register(meterRegistry);
+        this.saved = snapshotsCounter(meterRegistry, "saved");
+        this.duplicates = snapshotsCounter(meterRegistry, "duplicate");
+        this.failed = snapshotsCounter(meterRegistry, "failed");
+        this.spilled = snapshotsCounter(meterRegistry, "spilled");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        flusher = Thread.ofPlatform().name("company-stocks-write-behind").daemon(true).start(this::run);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // queues the snapshot for the next batch
+    // false when write-behind is off, stopping or the queue is full - the caller inserts it itself
+    // the CompanyStock entity is created in the flush transaction
+    public boolean offer(StockSnapshot snapshot) {
+        if (!enabled || stopping) {
+            return false;
+        }
+        return queue.offer(snapshot);
+    }
+
+    // flush what is queued before the repositories and the connection pool shut down
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        stopping = true;
+        flusher.join(shutdownTimeout.toMillis());
+        // the flusher did not finish in time - keep the rest for the next start
+        List<StockSnapshot> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            spill(rest);
+        }
+    }
+
+    private void run() {
+        // the spilled snapshots of an earlier run first - on this thread, so startup does not wait for them
+        replaySpillFile();
+        List<StockSnapshot> batch = new ArrayList<>(batchSize);
+        while (!stopping || !queue.isEmpty()) {
+            try {
+                if (nextBatch(batch)) {
+                    flush(batch);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                spill(batch);
+                return;
+            } catch (RuntimeException ex) {
+                // never let the flusher thread die, the queue would only grow
+                log.error("Write-behind flush failed, spilling {} snapshots", batch.size(), ex);
+                spill(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    // waits for the first snapshot, then collects more until the batch is full or flush-interval has passed
+    private boolean nextBatch(List<StockSnapshot> batch) throws InterruptedException {
+        StockSnapshot first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return false;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            StockSnapshot next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return true;
+    }
+
+    // one transaction and one saveAll per batch - sequence ids (allocationSize 50) keep Hibernate insert batching on
+    void flush(List<StockSnapshot> snapshots) {
+        List<StockSnapshot> batch = new ArrayList<>(snapshots.size());
+        for (StockSnapshot snapshot : snapshots) {
+            if (snapshot.marketCapitalization() == null || snapshot.shareOutstanding() == null) {
+                // NOT NULL columns - no retry can store it
+                reject(snapshot, "a value is missing");
+            } else {
+                batch.add(snapshot);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                saveAll(batch);
+                saved.increment(batch.size());
+                return;
+            } catch (DataIntegrityViolationException ex) {
+                // one row violates a constraint (usually a duplicate stored by another instance)
+                // - the others still have to go in
+                saveOneByOne(batch);
+                return;
+            } catch (RuntimeException ex) {
+                if (attempt >= maxAttempts) {
+                    log.warn("Write-behind batch of {} snapshots failed {} times, spilling to {}",
+                            batch.size(), attempt, spillFile, ex);
+                    spill(batch);
+                    return;
+                }
+                log.warn("Write-behind batch of {} snapshots failed, retrying", batch.size(), ex);
+                LockSupport.parkNanos(retryBackoff.multipliedBy(attempt).toNanos());
+            }
+        }
+    }
+
+    private void saveOneByOne(List<StockSnapshot> batch) {
+        List<StockSnapshot> retry = new ArrayList<>();
+        for (StockSnapshot snapshot : batch) {
+            try {
+                saveAll(List.of(snapshot));
+                saved.increment();
+            } catch (DataIntegrityViolationException ex) {
+                if (isDuplicate(ex)) {
+                    // the day is already stored, nothing to retry
+                    duplicates.increment();
+                    log.debug("Snapshot of company {} for {} already stored", snapshot.companyId(), snapshot.fetchDate());
+                } else {
+                    // e.g. the company was deleted while its snapshot was queued - a retry fails the same way
+                    reject(snapshot, ex.getMostSpecificCause().getMessage());
+                }
+            } catch (RuntimeException ex) {
+                retry.add(snapshot);
+            }
+        }
+        if (!retry.isEmpty()) {
+            spill(retry);
+        }
+    }
+
+    private void reject(StockSnapshot snapshot, String reason) {
+        failed.increment();
+        log.warn("Dropping snapshot {} - {}", snapshot, reason);
+    }
+
+    // Hibernate reports the violated constraint name (H2 adds a suffix to it, Postgres does not)
+    private static boolean isDuplicate(DataIntegrityViolationException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                String constraint = violation.getConstraintName();
+                return constraint != null && constraint.toLowerCase().contains(DUPLICATE_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+    private void saveAll(List<StockSnapshot> snapshots) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                companyStockRepository.saveAll(snapshots.stream()
+                        .map(snapshot -> new CompanyStock(
+                                companyRepository.getReferenceById(snapshot.companyId()),
+                                snapshot.fetchDate(),
+                                snapshot.marketCapitalization(),
+                                snapshot.shareOutstanding()))
+                        .toList()));
+    }
+
+    // one CSV line per snapshot, appended - the file survives a restart
+    synchronized void spill(List<StockSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        try {
+            Path parent = spillFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(spillFile, snapshots.stream().map(CompanyStockWriteBehind::toCsv).toList(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            spilled.increment(snapshots.size());
+        } catch (IOException ex) {
+            // last resort - the values are in the log, the snapshot is fetched again on the next miss
+            log.error("Could not spill {} snapshots to {}: {}", snapshots.size(), spillFile, snapshots, ex);
+        }
+    }
+
+    // flushes the snapshots spilled by an earlier run; failing ones are spilled again
+    // the spill file is renamed to .replaying first and deleted only after the flush, a crash in between
+    // replays it again on the next start (rows already stored come back as duplicates)
+    void replaySpillFile() {
+        List<StockSnapshot> snapshots;
+        try {
+            snapshots = takeSpilledSnapshots();
+        } catch (IOException ex) {
+            log.error("Could not read spilled snapshots from {}, keeping them for the next start", spillFile, ex);
+            return;
+        }
+        if (snapshots == null) {
+            return;
+        }
+        log.info("Replaying {} spilled snapshots from {}", snapshots.size(), replayingFile);
+        try {
+            for (int from = 0; from < snapshots.size(); from += batchSize) {
+                flush(snapshots.subList(from, Math.min(from + batchSize, snapshots.size())));
+            }
+            Files.delete(replayingFile);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Replaying spilled snapshots from {} failed, keeping them for the next start", replayingFile, ex);
+        }
+    }
+
+    // moves the spill file to .replaying and reads it, null when there is nothing to replay
+    // unreadable lines are moved to .rejected instead of stopping the replay
+    private synchronized List<StockSnapshot> takeSpilledSnapshots() throws IOException {
+        if (Files.exists(spillFile)) {
+            if (Files.exists(replayingFile)) {
+                // an earlier replay did not finish - replay both files
+                Files.write(replayingFile, Files.readAllLines(spillFile), StandardOpenOption.APPEND);
+                Files.delete(spillFile);
+            } else {
+                Files.move(spillFile, replayingFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        if (!Files.exists(replayingFile)) {
+            return null;
+        }
+        List<StockSnapshot> snapshots = new ArrayList<>();
+        List<String> rejected = new ArrayList<>();
+        for (String line : Files.readAllLines(replayingFile)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                snapshots.add(fromCsv(line));
+            } catch (RuntimeException ex) {
+                rejected.add(line);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            Files.write(rejectedFile, rejected, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            log.warn("{} unreadable spilled snapshots moved to {}", rejected.size(), rejectedFile);
+        }
+        return snapshots;
+    }
+
+    // queued snapshots, for tests
+    int queued() {
+        return queue.size();
+    }
+
+    private static Counter snapshotsCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("company.stocks.write-behind.snapshots")
+                .description("Snapshots handled by the write-behind")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // one spill file line - a missing value (Finnhub leaves them out for some symbols) is an empty column
+    static String toCsv(StockSnapshot snapshot) {
+        return snapshot.companyId() + "," + snapshot.fetchDate()
+                + "," + column(snapshot.marketCapitalization()) + "," + column(snapshot.shareOutstanding());
+    }
+
+    static StockSnapshot fromCsv(String line) {
+        // -1 keeps trailing empty columns
+        String[] columns = line.split(",", -1);
+        if (columns.length != 4) {
+            throw new IllegalArgumentException("Invalid spilled snapshot: " + line);
+        }
+        return new StockSnapshot(Long.valueOf(columns[0]), LocalDate.parse(columns[1]),
+                value(columns[2]), value(columns[3]));
+    }
+
+    private static String column(Double value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static Double value(String column) {
+        return column.isEmpty() ? null : Double.valueOf(column);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.CompanyStocksResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+// in-memory (L1) cache in front of the database for the daily stock snapshots
+// a snapshot never changes during its fetch_date, so the response can be reused until the day ends
+@Component
+public class CompanyStocksCache {
+
+    private final Cache<CompanyStockKey, CompanyStocksResponse> cache;
+    // newest company version per changed company - a response read before the change must not be put back
+    private final Cache<Long, Long> companyVersions;
+
+    public CompanyStocksCache(
+            @Value("${company-stocks.cache.max-size:10000}") long maxSize,
+            @Value("${company-stocks.cache.ttl:1h}") Duration ttl) {
+        // maximumSize -> bounded memory, least used entries are evicted first
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new RolloverExpiry(ttl))
+                .build();
+        // a response older than ttl is not put any more, so the versions are not needed longer
+        this.companyVersions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    // returns null when there is no cached response for the key
+    public CompanyStocksResponse get(CompanyStockKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    // a response with an older company version than companyChanged has seen is dropped
+    // (read before the change committed, put after the eviction)
+    // the check and the put run under the company's entry lock, companyChanged records the version under the same lock
+    public void put(CompanyStockKey key, CompanyStocksResponse response) {
+        Long version = response.getCompanyVersion();
+        if (version == null) {
+            cache.put(key, response);
+            return;
+        }
+        companyVersions.asMap().compute(key.companyId(), (companyId, newest) -> {
+            if (newest == null || version >= newest) {
+                cache.put(key, response);
+            }
+            return newest;
+        });
+    }
+
+    // called after a company change committed - the cached response contains the old company fields
+    public void companyChanged(Long companyId, Long version) {
+        if (version != null) {
+            companyVersions.asMap().merge(companyId, version, Math::max);
+        }
+        evictCompany(companyId);
+    }
+
+    public void evictCompany(Long companyId) {
+        cache.asMap().keySet().removeIf(key -> key.companyId().equals(companyId));
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    // time left until the snapshots of fetchDate are replaced by the next day's ones
+    // zero for snapshots from previous days; also the HTTP max-age of stock responses (CompanyStocksController)
+    public static Duration untilRollover(LocalDate fetchDate) {
+        ZoneId zone = ZoneId.systemDefault();
+        ZonedDateTime rollover = fetchDate.plusDays(1).atStartOfDay(zone);
+        Duration remaining = Duration.between(ZonedDateTime.now(zone), rollover);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    // entry lives for the configured ttl, but never longer than the end of its fetch_date
+    private static final class RolloverExpiry implements Expiry<CompanyStockKey, CompanyStocksResponse> {
+
+        private final long ttlNanos;
+
+        private RolloverExpiry(Duration ttl) {
+            this.ttlNanos = ttl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(CompanyStockKey key, CompanyStocksResponse value, long currentTime) {
+            return Math.min(ttlNanos, untilRollover(key.fetchDate()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(CompanyStockKey key, CompanyStocksResponse value,
+                                      long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(CompanyStockKey key, CompanyStocksResponse value,
+                                    long currentTime, long currentDuration) {
+            // reads do not extend the lifetime
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.CompanyStocksHistoryResponse;
+import com.example.stockcompanies.dto.StockHistoryPoint;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// reads stored CompanyStock snapshots as a time series (never calls Finnhub)
+@Service
+@RequiredArgsConstructor
+public class CompanyStocksHistoryService {
+    private final CompanyRepository companyRepository;
+    private final CompanyStockRepository companyStockRepository;
+
+    // interval -> day: every snapshot, week/month: last snapshot of every period (done in SQL)
+    public CompanyStocksHistoryResponse getHistory(Long companyId, LocalDate from, LocalDate to, String interval) {
+        // basic input validation
+        if (companyId == null) {
+            throw new IllegalArgumentException("companyId is required");
+        }
+        // default range is the last year up to today
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusYears(1);
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        String unit = interval == null ? "day" : interval.trim().toLowerCase(Locale.ROOT);
+
+        if (!companyRepository.existsById(companyId)) {
+            throw new IllegalStateException("Company with id " + companyId + " not found");
+        }
+
+        List<StockHistoryPoint> points = switch (unit) {
+            case "day" -> companyStockRepository.findHistory(companyId, start, end);
+            case "week", "month" -> companyStockRepository.findHistoryLastPerPeriod(companyId, start, end, unit);
+            default -> throw new IllegalArgumentException("interval must be one of day, week, month");
+        };
+
+        // rows -> parallel lists
+        List<LocalDate> dates = new ArrayList<>(points.size());
+        List<Double> marketCapitalization = new ArrayList<>(points.size());
+        List<Double> shareOutstanding = new ArrayList<>(points.size());
+        for (StockHistoryPoint point : points) {
+            dates.add(point.fetchDate());
+            marketCapitalization.add(point.marketCapitalization());
+            shareOutstanding.add(point.shareOutstanding());
+        }
+
+        return CompanyStocksHistoryResponse.builder()
+                .companyId(companyId)
+                .from(start)
+                .to(end)
+                .interval(unit)
+                .dates(dates)
+                .marketCapitalization(marketCapitalization)
+                .shareOutstanding(shareOutstanding)
+                .build();
+    }
+}
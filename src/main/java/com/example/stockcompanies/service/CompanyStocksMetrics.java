@@ -0,0 +1,44 @@
+package com.example.stockcompanies.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+// hit/miss counters for the two levels in front of Finnhub
+// company.stocks.cache.lookups{level=memory|database, result=hit|miss}
+// - memory: the in-memory response cache
+// - database: today's CompanyStock row (a miss means a Finnhub call or a stale answer)
+@Component
+public class CompanyStocksMetrics {
+
+    private static final String LOOKUPS = "company.stocks.cache.lookups";
+
+    private final Counter memoryHits;
+    private final Counter memoryMisses;
+    private final Counter databaseHits;
+    private final Counter databaseMisses;
+
+    public CompanyStocksMetrics(MeterRegistry meterRegistry) {
+        // registered once, the request path only increments
+        this.memoryHits = lookups(meterRegistry, "memory", "hit");
+        this.memoryMisses = lookups(meterRegistry, "memory", "miss");
+        this.databaseHits = lookups(meterRegistry, "database", "hit");
+        this.databaseMisses = lookups(meterRegistry, "database", "miss");
+    }
+
+    public void memoryLookup(boolean hit) {
+        (hit ? memoryHits : memoryMisses).increment();
+    }
+
+    public void databaseLookup(boolean hit) {
+        (hit ? databaseHits : databaseMisses).increment();
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String level, String result) {
+        return Counter.builder(LOOKUPS)
+                .description("Daily stock snapshot lookups by cache level and result")
+                .tag("level", level)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.stockcompanies.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// keeps the monthly partitions of company_stocks (db/migration/V2__partition_company_stocks.sql)
+// - creates the partitions for the next months-ahead months, so inserts never miss a partition
+// - detaches the months older than retention-months and moves them to the archive schema (or drops them)
+// Postgres only, disabled in the H2 test profile
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "company-stocks.partitions.enabled", havingValue = "true")
+public class CompanyStocksPartitionJob {
+
+    // pg_advisory_lock key of the maintenance, any constant not used by another advisory lock
+    static final long MAINTENANCE_LOCK_KEY = 7_301_001L;
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("company_stocks_(\\d{4})_(\\d{2})");
+
+    private final DataSource dataSource;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean dropDetached;
+
+    public CompanyStocksPartitionJob(
+            DataSource dataSource,
+            @Value("${company-stocks.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${company-stocks.partitions.retention-months:24}") int retentionMonths,
+            @Value("${company-stocks.partitions.drop-detached:false}") boolean dropDetached) {
+        if (retentionMonths < 1) {
+            throw new IllegalArgumentException("company-stocks.partitions.retention-months must be at least 1");
+        }
+        this.dataSource = dataSource;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.dropDetached = dropDetached;
+    }
+
+    // on startup too, so a deployment after a long downtime does not start without this month's partition
+    // a failure is only logged - the application still starts and the cron run tries again
+    @EventListener(ApplicationReadyEvent.class)
+    public void maintainOnStartup() {
+        try {
+            maintain();
+        } catch (RuntimeException ex) {
+            log.error("Company stocks partition maintenance on startup failed", ex);
+        }
+    }
+
+    // every replica runs the cron - only the one holding the advisory lock does the work, the others skip
+    // returns false when another replica is already maintaining the partitions
+    @Scheduled(cron = "${company-stocks.partitions.cron:0 30 0 * * *}")
+    public boolean maintain() {
+        return withConnection(connection -> {
+            if (!tryLock(connection)) {
+                log.info("Company stocks partition maintenance already running on another instance, skipping");
+                return false;
+            }
+            try {
+                YearMonth current = YearMonth.now();
+                createPartitions(connection, current, current.plusMonths(monthsAhead));
+                archivePartitionsBefore(connection, current.minusMonths(retentionMonths));
+                return true;
+            } finally {
+                unlock(connection);
+            }
+        });
+    }
+
+    // partitions for every month from..to (both included), existing ones are left as they are
+    public void createPartitions(YearMonth from, YearMonth to) {
+        withConnection(connection -> {
+            createPartitions(connection, from, to);
+            return null;
+        });
+    }
+
+    // detaches the partitions of the months before firstKept, returns their names
+    public List<String> archivePartitionsBefore(YearMonth firstKept) {
+        return withConnection(connection -> archivePartitionsBefore(connection, firstKept));
+    }
+
+    private static void createPartitions(Connection connection, YearMonth from, YearMonth to) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select create_company_stocks_partition(?)")) {
+            for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                statement.setObject(1, month.atDay(1));
+                statement.execute();
+            }
+        }
+    }
+
+    private List<String> archivePartitionsBefore(Connection connection, YearMonth firstKept) throws SQLException {
+        List<String> expired = partitionsBefore(attachedPartitions(connection), firstKept);
+        try (Statement statement = connection.createStatement()) {
+            for (String partition : expired) {
+                // CONCURRENTLY -> readers and writers of the other months are not blocked
+                // names come from PARTITION_NAME, so they are safe to put into the statement
+                statement.execute("alter table company_stocks detach partition " + partition + " concurrently");
+                statement.execute(dropDetached
+                        ? "drop table " + partition
+                        : "alter table " + partition + " set schema archive");
+                log.info("Company stocks partition {} {}", partition, dropDetached ? "dropped" : "moved to archive");
+            }
+        }
+        return expired;
+    }
+
+    // partitions whose whole month is before firstKept, in month order
+    static List<String> partitionsBefore(Collection<String> partitions, YearMonth firstKept) {
+        List<String> expired = new ArrayList<>();
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                if (month.isBefore(firstKept)) {
+                    expired.add(partition);
+                }
+            }
+        }
+        expired.sort(null);
+        return expired;
+    }
+
+    private static List<String> attachedPartitions(Connection connection) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("""
+                     select c.relname
+                     from pg_inherits i
+                     join pg_class c on c.oid = i.inhrelid
+                     where i.inhparent = 'company_stocks'::regclass
+                     """)) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        return partitions;
+    }
+
+    // session-level lock - held by this connection until unlock() (or until the connection is closed),
+    // it does not need a transaction, so it works with the autocommit connection DETACH CONCURRENTLY needs
+    private static boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select pg_try_advisory_lock(?)")) {
+            statement.setLong(1, MAINTENANCE_LOCK_KEY);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select pg_advisory_unlock(?)")) {
+            statement.setLong(1, MAINTENANCE_LOCK_KEY);
+            statement.execute();
+        }
+    }
+
+    private <T> T withConnection(ConnectionCallback<T> callback) {
+        try (Connection connection = dataSource.getConnection()) {
+            // DETACH ... CONCURRENTLY cannot run inside a transaction block
+            connection.setAutoCommit(true);
+            return callback.doInConnection(connection);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Company stocks partition maintenance failed", ex);
+        }
+    }
+
+    private interface ConnectionCallback<T> {
+        T doInConnection(Connection connection) throws SQLException;
+    }
+}
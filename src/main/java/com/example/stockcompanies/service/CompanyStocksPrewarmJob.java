@@ -0,0 +1,159 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// fills today's CompanyStock snapshots for all companies before user traffic arrives
+// companies that already have today's snapshot are skipped, so a restarted job continues where it stopped
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "company-stocks.prewarm.enabled", havingValue = "true")
+public class CompanyStocksPrewarmJob {
+
+    private final CompanyRepository companyRepository;
+    private final CompanyStockRepository companyStockRepository;
+    private final CompanyStocksService companyStocksService;
+    private final TaskScheduler taskScheduler;
+
+    private final int pageSize;
+    private final boolean runOnStartup;
+    // minimum time between two Finnhub calls, derived from the allowed calls per minute
+    private final long pauseNanos;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong remaining = new AtomicLong();
+    private final Counter fetched;
+    private final Counter skipped;
+    private final Counter failed;
+
+    public CompanyStocksPrewarmJob(
+            CompanyRepository companyRepository,
+            CompanyStockRepository companyStockRepository,
+            CompanyStocksService companyStocksService,
+            TaskScheduler taskScheduler,
+            MeterRegistry meterRegistry,
+            @Value("${company-stocks.prewarm.page-size:200}") int pageSize,
+            @Value("${company-stocks.prewarm.run-on-startup:true}") boolean runOnStartup,
+            @Value("${company-stocks.prewarm.calls-per-minute:50}") int callsPerMinute) {
+        this.companyRepository = companyRepository;
+        this.companyStockRepository = companyStockRepository;
+        this.companyStocksService = companyStocksService;
+        this.taskScheduler = taskScheduler;
+        this.pageSize = pageSize;
+        this.runOnStartup = runOnStartup;
+        this.pauseNanos = TimeUnit.MINUTES.toNanos(1) / callsPerMinute;
+
+        // progress metrics
+        this.fetched = companiesCounter(meterRegistry, "fetched");
+        this.skipped = companiesCounter(meterRegistry, "skipped");
+        this.failed = companiesCounter(meterRegistry, "failed");
+        Gauge.builder("company.stocks.prewarm.remaining", remaining, AtomicLong::get)
+                .description("Companies left to check in the running pre-warm")
+                .register(meterRegistry);
+        Gauge.builder("company.stocks.prewarm.running", running, flag -> flag.get() ? 1 : 0)
+                .description("1 while a pre-warm is running")
+                .register(meterRegistry);
+    }
+
+    // shortly after the fetch_date rollover
+    @Scheduled(cron = "${company-stocks.prewarm.cron:0 5 0 * * *}")
+    public void prewarmOnSchedule() {
+        prewarm();
+    }
+
+    // resume after a restart - runs in the scheduler so startup is not blocked
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarmOnStartup() {
+        if (runOnStartup) {
+            taskScheduler.schedule(this::prewarm, Instant.now());
+        }
+    }
+
+    public void prewarm() {
+        // only one run at a time (startup run and cron run can overlap)
+        if (!running.compareAndSet(false, true)) {
+            log.info("Stock pre-warm already running, skipping");
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            remaining.set(companyRepository.count());
+            log.info("Stock pre-warm started for {} ({} companies)", today, remaining.get());
+
+            long nextCallAt = System.nanoTime();
+            long lastId = 0L;
+            List<Company> page = companyRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(pageSize));
+            while (!page.isEmpty()) {
+                List<Long> ids = page.stream().map(Company::getId).toList();
+                Set<Long> done = companyStockRepository.findCompanyIdsWithSnapshot(ids, today);
+
+                for (Long id : ids) {
+                    if (done.contains(id)) {
+                        skipped.increment();
+                    } else {
+                        // rate limit - wait for the next free slot of the Finnhub plan
+                        nextCallAt = pace(nextCallAt);
+                        fetch(id);
+                    }
+                    remaining.decrementAndGet();
+                }
+
+                lastId = ids.getLast();
+                page = companyRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(pageSize));
+            }
+            log.info("Stock pre-warm finished for {}", today);
+        } finally {
+            remaining.set(0);
+            running.set(false);
+        }
+    }
+
+    private void fetch(Long companyId) {
+        try {
+            // waits for today's snapshot - a stale answer would be counted as fetched while the refresh can still fail
+            companyStocksService.getFreshCompanyStocks(companyId);
+            fetched.increment();
+        } catch (RuntimeException ex) {
+            // one failing company should not stop the whole run - user traffic will retry it
+            failed.increment();
+            log.warn("Stock pre-warm failed for company {}", companyId, ex);
+        }
+    }
+
+    private long pace(long nextCallAt) {
+        long waitNanos = nextCallAt - System.nanoTime();
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        return Math.max(nextCallAt, System.nanoTime()) + pauseNanos;
+    }
+
+    private static Counter companiesCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("company.stocks.prewarm.companies")
+                .description("Companies processed by the stock pre-warm")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
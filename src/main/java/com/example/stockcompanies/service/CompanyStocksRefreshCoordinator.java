@@ -0,0 +1,139 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// makes one instance of the cluster refresh a (companyId, fetchDate) snapshot, the others wait for its result
+// - a lease row in company_stock_refresh_leases is claimed with INSERT ... ON CONFLICT, the winner calls Finnhub
+// - a lease expires after lease-timeout, so a crashed holder does not block the day
+// - the others poll the database for the stored snapshot, up to wait-timeout
+// no lock or transaction is held while Finnhub is called (advisory locks and SKIP LOCKED would hold a connection)
+// SingleFlight already does the same between the threads of one instance
+@Slf4j
+@Component
+public class CompanyStocksRefreshCoordinator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private final boolean enabled;
+    private final double leaseSeconds;
+    private final long waitTimeoutNanos;
+    private final long pollIntervalNanos;
+    // identifies this instance as lease owner
+    private final String owner = UUID.randomUUID().toString();
+
+    private final Counter claimed;
+    private final Counter waited;
+    private final Counter timedOut;
+
+    public CompanyStocksRefreshCoordinator(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${company-stocks.refresh-coordination.enabled:false}") boolean enabled,
+            @Value("${company-stocks.refresh-coordination.lease-timeout:30s}") Duration leaseTimeout,
+            @Value("${company-stocks.refresh-coordination.wait-timeout:5s}") Duration waitTimeout,
+            @Value("${company-stocks.refresh-coordination.poll-interval:200ms}") Duration pollInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.enabled = enabled;
+        this.leaseSeconds = leaseTimeout.toMillis() / 1000.0;
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+        this.pollIntervalNanos = pollInterval.toNanos();
+
+        this.claimed = leasesCounter(meterRegistry, "claimed");
+        this.waited = leasesCounter(meterRegistry, "waited");
+        this.timedOut = leasesCounter(meterRegistry, "timeout");
+    }
+
+    // refresh runs only on the instance holding the lease for the key
+    // the others return the stored result once it appears, or throw FinnhubUnavailableException after wait-timeout
+    public <T> T refreshOnce(CompanyStockKey key, Supplier<T> refresh, Supplier<Optional<T>> stored) {
+        if (!enabled) {
+            return refresh.get();
+        }
+        long deadline = System.nanoTime() + waitTimeoutNanos;
+        while (true) {
+            if (tryClaim(key)) {
+                claimed.increment();
+                try {
+                    return refresh.get();
+                } catch (RuntimeException | Error ex) {
+                    // let another instance (or the next request) try right away
+                    release(key);
+                    throw ex;
+                }
+            }
+            // another instance is fetching - its snapshot shows up in the database
+            Optional<T> result = stored.get();
+            if (result.isPresent()) {
+                waited.increment();
+                return result.get();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                timedOut.increment();
+                throw new FinnhubUnavailableException("Stock data for company " + key.companyId()
+                        + " is being refreshed by another instance, try again later");
+            }
+            LockSupport.parkNanos(pollIntervalNanos);
+        }
+    }
+
+    // true when this instance got the lease: no row yet, or the row of another owner has expired
+    boolean tryClaim(CompanyStockKey key) {
+        // expires_at uses the database clock, the same for all instances
+        return Boolean.TRUE.equals(new TransactionTemplate(transactionManager).execute(status ->
+                !jdbcTemplate.queryForList("""
+                        insert into company_stock_refresh_leases (company_id, fetch_date, owner, expires_at)
+                        values (?, ?, ?, now() + make_interval(secs => ?))
+                        on conflict (company_id, fetch_date) do update
+                            set owner = excluded.owner, expires_at = excluded.expires_at
+                            where company_stock_refresh_leases.expires_at < now()
+                        returning owner
+                        """, String.class, key.companyId(), key.fetchDate(), owner, leaseSeconds).isEmpty()));
+    }
+
+    void release(CompanyStockKey key) {
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> jdbcTemplate.update(
+                    "delete from company_stock_refresh_leases where company_id = ? and fetch_date = ? and owner = ?",
+                    key.companyId(), key.fetchDate(), owner));
+        } catch (RuntimeException ex) {
+            // the lease expires on its own
+            log.warn("Could not release refresh lease for company {} on {}", key.companyId(), key.fetchDate(), ex);
+        }
+    }
+
+    // leases of past days are not needed any more - their snapshots are stored
+    @Scheduled(cron = "${company-stocks.refresh-coordination.purge-cron:0 15 0 * * *}")
+    public void purgeOldLeases() {
+        if (!enabled) {
+            return;
+        }
+        int purged = new TransactionTemplate(transactionManager).execute(status ->
+                jdbcTemplate.update("delete from company_stock_refresh_leases where fetch_date < current_date"));
+        log.info("Purged {} refresh leases of past days", purged);
+    }
+
+    private static Counter leasesCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("company.stocks.refresh.leases")
+                .description("Snapshot refreshes coordinated between instances")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
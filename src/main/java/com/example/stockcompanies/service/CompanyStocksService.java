@@ -1,81 +1,420 @@
 package com.example.stockcompanies.service;
 
+import com.example.stockcompanies.dto.CompanyStockView;
 import com.example.stockcompanies.dto.CompanyStocksResponse;
 import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
-import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.dto.StockSnapshot;
+import com.example.stockcompanies.client.FinnhubUnavailableException;
+import com.example.stockcompanies.client.ResilientFinnhubClient;
 import com.example.stockcompanies.mapper.CompanyStocksMapper;
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.model.CompanyStock;
 import com.example.stockcompanies.repository.CompanyRepository;
 import com.example.stockcompanies.repository.CompanyStockRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+// database work runs in short explicit transactions (read-only for reads) and never around a Finnhub call,
+// so a slow Finnhub does not hold pooled connections (spring.jpa.open-in-view=false)
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class CompanyStocksService {
     private final CompanyRepository companyRepository;
     private final CompanyStockRepository companyStockRepository;
-    private final FinnhubFeignClient finnhubClient;
+    private final ResilientFinnhubClient finnhubClient;
     private final CompanyStocksMapper mapper;
+    private final CompanyStocksCache cache;
+    private final FinnhubCallExecutor finnhubCallExecutor;
+    private final CompanyStocksMetrics metrics;
+    private final PlatformTransactionManager transactionManager;
+    private final CompanyStockWriteBehind writeBehind;
+    private final CompanyStocksRefreshCoordinator refreshCoordinator;
+
+    // concurrent cache misses for the same company and day share one Finnhub call
+    private final SingleFlight<CompanyStockKey, StockSnapshot> inFlightFetches = new SingleFlight<>();
 
     @Value("${finnhub.api-key}")
     private String apiKey;
 
+    @Value("${company-stocks.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${company-stocks.batch.timeout:10s}")
+    private Duration batchTimeout;
+
+    @Value("${company-stocks.async.timeout:3s}")
+    private Duration asyncTimeout;
+
+    @Value("${company-stocks.stale-while-revalidate.enabled:true}")
+    private boolean staleWhileRevalidate;
+
+    // keys with a background refresh already queued - one refresh per company and day
+    private final Set<CompanyStockKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    // database work of the async variant (lookup and stored snapshot fallback) - short reads, bounded by the connection pool
+    private final ExecutorService databaseExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stock-db-", 0).factory());
+
     public CompanyStocksResponse getCompanyStocks(Long companyId) {
+        return getCompanyStocks(companyId, true);
+    }
+
+    // today's snapshot only - waits for the Finnhub fetch instead of answering with an older snapshot
+    // (no stale-while-revalidate, no stored-snapshot fallback, Finnhub errors are thrown)
+    // for the pre-warm job, whose counters have to say whether today's snapshot was stored
+    public CompanyStocksResponse getFreshCompanyStocks(Long companyId) {
+        return getCompanyStocks(companyId, false);
+    }
+
+    private CompanyStocksResponse getCompanyStocks(Long companyId, boolean allowStale) {
+        Lookup lookup = lookup(companyId, allowStale);
+        return lookup.response() != null ? lookup.response() : fetch(lookup, allowStale);
+    }
+
+    // everything answered without Finnhub: in-memory cache, today's stored snapshot, stale-while-revalidate
+    // the response is null when today's snapshot has to be fetched
+    private Lookup lookup(Long companyId, boolean allowStale) {
 
         // basic input validation
         if (companyId == null) {
             throw new IllegalArgumentException("companyId is required");
         }
 
-        Company company = companyRepository.findById(companyId)
+        LocalDate today = LocalDate.now();
+        CompanyStockKey key = new CompanyStockKey(companyId, today);
+
+        // in-memory cache first - hot companies are answered without touching the database
+        CompanyStocksResponse cached = cache.get(key);
+        metrics.memoryLookup(cached != null);
+        if (cached != null) {
+            return new Lookup(key, null, cached);
+        }
+
+        // company and today's snapshot in one query
+        CompanyStockView view = readOnlyTransaction(() -> companyRepository.findStockView(companyId, today))
                 .orElseThrow(() ->
                         new IllegalStateException(
                                 "Company with id " + companyId + " not found"));
-        LocalDate today = LocalDate.now();
 
         // check cache - is there already stock data for this company for today
-        CompanyStock companyStock =
-                companyStockRepository
-                        .findByCompanyIdAndFetchDate(
-                                companyId,
-                                today)
-                        .orElseGet(() ->
-                                fetchAndSave(company, today));
+        metrics.databaseLookup(view.hasStock());
+        if (view.hasStock()) {
+            return new Lookup(key, view, mapAndCache(key, view));
+        }
 
-        // return response
-        return mapToResponse(company, companyStock);
+        // stale-while-revalidate - answer with the previous snapshot and fetch today's one in the background
+        if (allowStale && staleWhileRevalidate) {
+            Optional<CompanyStock> previous = readOnlyTransaction(() ->
+                    companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId));
+            if (previous.isPresent()) {
+                refreshInBackground(key, view);
+                return new Lookup(key, view, toStaleResponse(mapper.toResponse(view.withStock(previous.get()))));
+            }
+        }
+        return new Lookup(key, view, null);
     }
 
-    private CompanyStock fetchAndSave(
-            Company company,
+    private CompanyStocksResponse fetch(Lookup lookup, boolean allowStale) {
+        CompanyStockKey key = lookup.key();
+        try {
+            StockSnapshot snapshot = inFlightFetches.execute(key,
+                    () -> fetchAndSave(key.companyId(), lookup.view().symbol(), key.fetchDate()));
+            return mapAndCache(key, lookup.view().withStock(snapshot));
+        } catch (FinnhubUnavailableException ex) {
+            if (!allowStale) {
+                throw ex;
+            }
+            // circuit breaker open, rate limit or call slots exhausted - serve the stored snapshot if there is one
+            return latestStoredSnapshot(key.companyId(), ex);
+        }
+    }
+
+    // non-blocking variant - the servlet thread is released while the snapshot is looked up and fetched
+    // only the Finnhub fetch and its save run on the Finnhub executor; the lookup runs on the database executor,
+    // so a snapshot already stored today does not wait behind slow Finnhub calls
+    // if the fetch fails or the whole lookup takes longer than the timeout, the most recent stored snapshot is returned
+    // the fallback runs on the database executor too: the Finnhub pool is the one backed up when the timeout fires
+    // a fetch still queued at the timeout is skipped (FinnhubCallExecutor.submit); a running one is not interrupted,
+    // other requests may share it (SingleFlight) and it still stores today's snapshot for them
+    public CompletableFuture<CompanyStocksResponse> getCompanyStocksAsync(Long companyId) {
+
+        if (companyId == null) {
+            throw new IllegalArgumentException("companyId is required");
+        }
+
+        CompanyStocksResponse cached = cache.get(new CompanyStockKey(companyId, LocalDate.now()));
+        if (cached != null) {
+            // misses are counted by lookup below
+            metrics.memoryLookup(true);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        long deadline = System.nanoTime() + asyncTimeout.toNanos();
+        return CompletableFuture.supplyAsync(() -> lookup(companyId, true), databaseExecutor)
+                .thenCompose(lookup -> lookup.response() != null
+                        ? CompletableFuture.completedFuture(lookup.response())
+                        // the fetch's own future times out with the rest of the timeout, so a queued one is skipped
+                        : finnhubCallExecutor.submit(() -> fetch(lookup, true))
+                                .orTimeout(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                .orTimeout(asyncTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                // the fallback reads the database, so it does not run on the timer thread
+                .exceptionallyAsync(ex -> latestStoredSnapshot(companyId, ex), databaseExecutor);
+    }
+
+    // returns today's stock data for many companies at once
+    // a failed or late Finnhub fetch (rate limit, open circuit, batch timeout) is answered with the most recent
+    // stored snapshot, flagged as stale - like the single and async paths
+    // unknown ids and companies with nothing stored at all are left out of the result
+    public List<CompanyStocksResponse> getCompanyStocksBatch(List<Long> companyIds) {
+
+        if (companyIds == null || companyIds.isEmpty()) {
+            throw new IllegalArgumentException("companyIds are required");
+        }
+        if (companyIds.size() > maxBatchSize) {
+            throw new IllegalArgumentException("At most " + maxBatchSize + " companyIds are allowed per request");
+        }
+
+        LocalDate today = LocalDate.now();
+        // keep request order, drop nulls and duplicates
+        List<Long> ids = companyIds.stream().filter(Objects::nonNull).distinct().toList();
+
+        Map<Long, CompanyStocksResponse> responses = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : ids) {
+            CompanyStocksResponse cached = cache.get(new CompanyStockKey(id, today));
+            metrics.memoryLookup(cached != null);
+            if (cached != null) {
+                responses.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            // one IN query for the companies and one for today's snapshots, in one read-only transaction
+            Stored stored = readOnlyTransaction(() -> {
+                Map<Long, Company> found = companyRepository.findAllById(misses).stream()
+                        .collect(Collectors.toMap(Company::getId, Function.identity()));
+                return new Stored(found, companyStockRepository
+                        .findByCompanyIdInAndFetchDate(found.keySet(), today).stream()
+                        .collect(Collectors.toMap(stock -> stock.getCompany().getId(), Function.identity())));
+            });
+            Map<Long, Company> companies = stored.companies();
+            Map<Long, CompanyStock> stocks = stored.stocks();
+
+            Map<Long, CompletableFuture<StockSnapshot>> fetches = new HashMap<>();
+            for (Company company : companies.values()) {
+                CompanyStockKey key = new CompanyStockKey(company.getId(), today);
+                CompanyStock stock = stocks.get(company.getId());
+                metrics.databaseLookup(stock != null);
+                if (stock != null) {
+                    responses.put(company.getId(), mapAndCache(key, company, stock));
+                } else {
+                    // only the missing snapshots go to Finnhub, in parallel
+                    // all submitted together, so one timeout is the deadline of the whole batch;
+                    // a fetch still queued when it expires is skipped (FinnhubCallExecutor.submit)
+                    fetches.put(company.getId(), finnhubCallExecutor.submit(() ->
+                            inFlightFetches.execute(key, () -> fetchAndSave(company.getId(), company.getSymbol(), today)))
+                            .orTimeout(batchTimeout.toMillis(), TimeUnit.MILLISECONDS));
+                }
+            }
+
+            List<Long> failed = new ArrayList<>();
+            fetches.forEach((id, fetch) -> {
+                try {
+                    CompanyStockKey key = new CompanyStockKey(id, today);
+                    responses.put(id, mapAndCache(key, companies.get(id), fetch.join()));
+                } catch (CompletionException ex) {
+                    log.debug("Stock fetch failed for company {} in batch", id, ex.getCause());
+                    failed.add(id);
+                }
+            });
+
+            if (!failed.isEmpty()) {
+                // one query for the most recent stored snapshots of all failed companies
+                List<CompanyStock> latest = readOnlyTransaction(() -> companyStockRepository.findLatestByCompanyIdIn(failed));
+                for (CompanyStock stock : latest) {
+                    Long id = stock.getCompany().getId();
+                    responses.put(id, toStaleResponse(mapper.toResponse(companies.get(id), stock)));
+                }
+                log.warn("Stock fetch failed for {} companies in batch, {} answered with a stored snapshot",
+                        failed.size(), latest.size());
+            }
+        }
+
+        return ids.stream()
+                .map(responses::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // with several instances only the one holding the refresh lease calls Finnhub,
+    // the others return the snapshot it stores (FinnhubUnavailableException when it takes too long)
+    private StockSnapshot fetchAndSave(
+            Long companyId,
+            String symbol,
             LocalDate date) {
+        return refreshCoordinator.refreshOnce(
+                new CompanyStockKey(companyId, date),
+                () -> fetchFromFinnhubAndSave(companyId, symbol, date),
+                () -> readOnlyTransaction(() -> companyStockRepository.findByCompanyIdAndFetchDate(companyId, date)
+                        .map(StockSnapshot::of)));
+    }
 
+    private StockSnapshot fetchFromFinnhubAndSave(
+            Long companyId,
+            String symbol,
+            LocalDate date) {
+
+        // blocking upstream call, limited by the concurrency gate
         FinnhubCompanyProfileResponse finnhub =
-                finnhubClient.getCompanyProfile2(company.getSymbol(), apiKey);
+                finnhubCallExecutor.call(() -> finnhubClient.getCompanyProfile2(symbol, apiKey));
 
         // avoid NullPointerException if Finnhub return null
         if (finnhub == null) {
-            throw new IllegalStateException("Finnhub returned empty response for symbol " + company.getSymbol());
+            throw new IllegalStateException("Finnhub returned empty response for symbol " + symbol);
+        }
+        // the snapshot columns are NOT NULL - checked here, the write-behind snapshot has no entity to check them
+        if (finnhub.getMarketCapitalization() == null || finnhub.getShareOutstanding() == null) {
+            throw new IllegalStateException("Finnhub returned no stock values for symbol " + symbol);
+        }
+
+        // write-behind - answer now, the snapshot is inserted with the next batch
+        // a full queue falls back to the insert below
+        if (writeBehind.isEnabled()) {
+            StockSnapshot snapshot = new StockSnapshot(
+                    companyId, date, finnhub.getMarketCapitalization(), finnhub.getShareOutstanding());
+            if (writeBehind.offer(snapshot)) {
+                return snapshot;
+            }
+        }
+
+        // the write transaction starts only after Finnhub answered
+        try {
+            return StockSnapshot.of(transaction(() -> companyStockRepository.save(
+                    new CompanyStock(
+                            // the company was already read - the snapshot only needs its id for the foreign key, no second select
+                            companyRepository.getReferenceById(companyId),
+                            date,
+                            finnhub.getMarketCapitalization(),
+                            finnhub.getShareOutstanding()))));
+        } catch (DataIntegrityViolationException ex) {
+            // another instance stored today's snapshot first (uk_company_stock_company_date) - use the stored one
+            // read in a new transaction, the failed one is rolled back
+            return readOnlyTransaction(() -> companyStockRepository.findByCompanyIdAndFetchDate(companyId, date)
+                    .map(StockSnapshot::of))
+                    .orElseThrow(() -> ex);
+        }
+    }
+
+    private CompanyStocksResponse latestStoredSnapshot(Long companyId, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        // no stored snapshot (or unknown company) -> the original error goes to the client
+        CompanyStock latest = readOnlyTransaction(() -> companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId))
+                .orElseThrow(() -> cause instanceof RuntimeException runtime
+                        ? runtime
+                        : new FinnhubUnavailableException("Stock data for company " + companyId + " is not available", cause));
+        log.warn("Serving stored snapshot from {} for company {} - fetch failed", latest.getFetchDate(), companyId, cause);
+        return toStaleResponse(mapper.toResponse(latest.getCompany(), latest));
+    }
+
+    private void refreshInBackground(CompanyStockKey key, CompanyStockView view) {
+        if (!refreshing.add(key)) {
+            return;
         }
+        finnhubCallExecutor.submit(() -> mapAndCache(key, view.withStock(inFlightFetches.execute(key,
+                        () -> fetchAndSave(key.companyId(), view.symbol(), key.fetchDate())))))
+                .whenComplete((response, ex) -> {
+                    refreshing.remove(key);
+                    if (ex != null) {
+                        log.warn("Background refresh failed for company {}", key.companyId(), ex);
+                    }
+                });
+    }
+
+    // older snapshot, flagged as stale
+    // not cached - it should be replaced by the next successful fetch
+    private CompanyStocksResponse toStaleResponse(CompanyStocksResponse response) {
+        return response.toBuilder()
+                .stale(true)
+                .build();
+    }
 
-        CompanyStock companyStock =
-                new CompanyStock(
-                        company,
-                        date,
-                        finnhub.getMarketCapitalization(),
-                        finnhub.getShareOutstanding());
-        return companyStockRepository.save(companyStock);
+    private CompanyStocksResponse mapAndCache(
+            CompanyStockKey key,
+            CompanyStockView view) {
+        CompanyStocksResponse response = mapper.toResponse(view);
+        cache.put(key, response);
+        return response;
     }
 
-    private CompanyStocksResponse mapToResponse(
+    private CompanyStocksResponse mapAndCache(
+            CompanyStockKey key,
             Company company,
             CompanyStock stock) {
-        // return response
-        return mapper.toResponse(company, stock);
+        CompanyStocksResponse response = mapper.toResponse(company, stock);
+        cache.put(key, response);
+        return response;
+    }
+
+    private CompanyStocksResponse mapAndCache(
+            CompanyStockKey key,
+            Company company,
+            StockSnapshot stock) {
+        CompanyStocksResponse response = mapper.toResponse(company, stock);
+        cache.put(key, response);
+        return response;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        databaseExecutor.shutdown();
+    }
+
+    // read-only -> Hibernate skips dirty checking and flushing, Postgres gets a read-only transaction
+    private <T> T readOnlyTransaction(Supplier<T> work) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> work.get());
+    }
+
+    private <T> T transaction(Supplier<T> work) {
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+
+    // result of the lookup - the view is null for a cache hit, the response is null when Finnhub has to be called
+    private record Lookup(CompanyStockKey key, CompanyStockView view, CompanyStocksResponse response) {
+    }
+
+    // companies and today's snapshots read for a batch
+    private record Stored(Map<Long, Company> companies, Map<Long, CompanyStock> stocks) {
     }
 }
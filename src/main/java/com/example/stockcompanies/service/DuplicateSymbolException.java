@@ -0,0 +1,18 @@
+package com.example.stockcompanies.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// thrown when a company symbol is already taken (unique constraint uk_companies_symbol)
+// @ResponseStatus -> the client gets 409 Conflict instead of 500
+@ResponseStatus(HttpStatus.CONFLICT)
+public class DuplicateSymbolException extends IllegalStateException {
+
+    public DuplicateSymbolException(String message) {
+        super(message);
+    }
+
+    public DuplicateSymbolException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
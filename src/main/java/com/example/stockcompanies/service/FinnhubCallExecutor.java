@@ -0,0 +1,116 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubUnavailableException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// runs the blocking Finnhub calls
+// - submit() runs a call in the background, on platform threads or on virtual threads (finnhub.execution.mode)
+// - every call passes a gate that limits concurrent upstream calls, so a slow Finnhub cannot take all threads
+// - at most max-concurrent-calls submitted tasks run at once in both modes, the others wait for their turn
+@Component
+public class FinnhubCallExecutor {
+
+    public enum Mode { PLATFORM, VIRTUAL }
+
+    private final ExecutorService executor;
+    private final Semaphore gate;
+    // VIRTUAL mode only - stands in for the fixed pool size of PLATFORM mode
+    private final Semaphore backgroundSlots;
+    private final int maxConcurrentCalls;
+    private final long acquireTimeoutNanos;
+
+    public FinnhubCallExecutor(
+            @Value("${finnhub.execution.mode:platform}") Mode mode,
+            @Value("${finnhub.max-concurrent-calls:8}") int maxConcurrentCalls,
+            @Value("${finnhub.acquire-timeout:2s}") Duration acquireTimeout) {
+        // virtual threads are cheap while blocked on I/O - the gate is what bounds upstream concurrency
+        this.executor = mode == Mode.VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("finnhub-", 0).factory())
+                : Executors.newFixedThreadPool(maxConcurrentCalls,
+                        Thread.ofPlatform().name("finnhub-", 0).daemon(true).factory());
+        this.gate = new Semaphore(maxConcurrentCalls, true);
+        this.backgroundSlots = mode == Mode.VIRTUAL ? new Semaphore(maxConcurrentCalls, true) : null;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    // runs the call on the current thread once a slot is free
+    public <T> T call(Supplier<T> task) {
+        acquire();
+        try {
+            return task.get();
+        } finally {
+            gate.release();
+        }
+    }
+
+    // runs the task in the background, on the configured threads
+    // the upstream call inside the task still goes through call(), which applies the gate
+    // tasks beyond max-concurrent-calls wait for a running one to finish (queued in PLATFORM mode, parked in
+    // VIRTUAL mode) instead of racing for the gate - a batch of 500 misses is worked off, not mostly rejected
+    // a task whose future is already completed when its turn comes (orTimeout, cancel) is skipped -
+    // nobody waits for its result, and the backlog behind a slow Finnhub shrinks instead of running anyway
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(backgroundSlots == null ? task.get() : withBackgroundSlot(result, task));
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    // number of upstream calls running right now
+    public int activeCalls() {
+        return maxConcurrentCalls - gate.availablePermits();
+    }
+
+    // stop accepting calls when the application context closes
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T withBackgroundSlot(CompletableFuture<T> result, Supplier<T> task) {
+        try {
+            // no timeout - a parked virtual thread costs almost nothing, like a queued task in the fixed pool
+            backgroundSlots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FinnhubUnavailableException("Interrupted while waiting for a Finnhub call slot", ex);
+        }
+        try {
+            // timed out while waiting for the slot - the value is ignored, completing a done future is a no-op
+            return result.isDone() ? null : task.get();
+        } finally {
+            backgroundSlots.release();
+        }
+    }
+
+    private void acquire() {
+        try {
+            // fail fast instead of queueing forever when Finnhub is slow
+            if (!gate.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new FinnhubUnavailableException("Too many concurrent Finnhub calls, try again later");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FinnhubUnavailableException("Interrupted while waiting for a Finnhub call slot", ex);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+-- schema as created by spring.jpa.hibernate.ddl-auto=update before Flyway
+-- databases that already have these tables are baselined at version 1 (spring.flyway.baseline-on-migrate)
+
+CREATE SEQUENCE IF NOT EXISTS company_seq START WITH 1 INCREMENT BY 20;
+
+CREATE TABLE IF NOT EXISTS companies (
+    id         bigint                      NOT NULL PRIMARY KEY,
+    name       varchar(255)                NOT NULL,
+    symbol     varchar(255)                NOT NULL UNIQUE,
+    country    varchar(255)                NOT NULL,
+    website    varchar(255),
+    email      varchar(255)                NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS company_stocks (
+    id                    bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    company_id            bigint                      NOT NULL REFERENCES companies (id),
+    fetch_date            date                        NOT NULL,
+    market_capitalization float(53)                   NOT NULL,
+    share_outstanding     float(53)                   NOT NULL,
+    created_at            timestamp(6) with time zone NOT NULL,
+    CONSTRAINT uk_company_stock_company_date UNIQUE (company_id, fetch_date)
+);
@@ -0,0 +1,59 @@
+-- company_stocks partitioned by month of fetch_date
+-- - old months can be detached (see CompanyStocksPartitionJob) instead of deleted row by row
+-- - every partition has its own small index, autovacuum works on one month at a time
+-- existing rows are copied into the new table, the old table is dropped
+
+ALTER TABLE company_stocks RENAME TO company_stocks_unpartitioned;
+-- index names are unique per schema, the new table reuses this one
+ALTER INDEX IF EXISTS uk_company_stock_company_date RENAME TO uk_company_stock_company_date_unpartitioned;
+
+-- plain sequence default: identity columns on partitioned tables need Postgres 17
+CREATE SEQUENCE company_stock_seq;
+
+CREATE TABLE company_stocks (
+    id                    bigint                      NOT NULL DEFAULT nextval('company_stock_seq'),
+    company_id            bigint                      NOT NULL REFERENCES companies (id),
+    fetch_date            date                        NOT NULL,
+    market_capitalization float(53)                   NOT NULL,
+    share_outstanding     float(53)                   NOT NULL,
+    created_at            timestamp(6) with time zone NOT NULL,
+    -- the partition key has to be part of every unique constraint
+    CONSTRAINT pk_company_stocks PRIMARY KEY (id, fetch_date),
+    -- covering index for the (company_id, fetch_date) cache lookup and the history queries:
+    -- the stock values are read from the index, without visiting the table
+    CONSTRAINT uk_company_stock_company_date UNIQUE (company_id, fetch_date)
+        INCLUDE (market_capitalization, share_outstanding)
+) PARTITION BY RANGE (fetch_date);
+
+ALTER SEQUENCE company_stock_seq OWNED BY company_stocks.id;
+
+-- detached partitions are kept here until they are exported or dropped
+CREATE SCHEMA IF NOT EXISTS archive;
+
+-- creates the partition company_stocks_YYYY_MM for the month of the given date, if it does not exist yet
+CREATE FUNCTION create_company_stocks_partition(month date) RETURNS text AS $$
+DECLARE
+    month_start    date := date_trunc('month', month)::date;
+    partition_name text := 'company_stocks_' || to_char(month, 'YYYY_MM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF company_stocks FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, month_start, (month_start + interval '1 month')::date);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- partitions for the stored months and the next 3 months
+-- no default partition: it would block creating a month that already has rows in it
+SELECT create_company_stocks_partition(month::date)
+FROM generate_series(
+        date_trunc('month', coalesce((SELECT min(fetch_date) FROM company_stocks_unpartitioned), current_date)),
+        date_trunc('month', current_date) + interval '3 months',
+        interval '1 month') AS month;
+
+INSERT INTO company_stocks (id, company_id, fetch_date, market_capitalization, share_outstanding, created_at)
+SELECT id, company_id, fetch_date, market_capitalization, share_outstanding, created_at
+FROM company_stocks_unpartitioned;
+
+SELECT setval('company_stock_seq', coalesce((SELECT max(id) FROM company_stocks), 0) + 1, false);
+
+DROP TABLE company_stocks_unpartitioned;
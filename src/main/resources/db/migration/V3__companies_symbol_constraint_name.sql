@@ -0,0 +1,22 @@
+-- the unique constraint on companies.symbol gets a fixed name, CompanyService recognizes violations by it
+-- its old name depends on who created it (Hibernate generates UK..., Postgres companies_symbol_key)
+DO $$
+DECLARE
+    existing text;
+BEGIN
+    SELECT con.conname INTO existing
+    FROM pg_constraint con
+    JOIN pg_attribute att ON att.attrelid = con.conrelid AND att.attnum = ANY (con.conkey)
+    WHERE con.conrelid = 'companies'::regclass
+      AND con.contype = 'u'
+      AND cardinality(con.conkey) = 1
+      AND att.attname = 'symbol'
+    LIMIT 1;
+
+    IF existing IS NULL THEN
+        ALTER TABLE companies ADD CONSTRAINT uk_companies_symbol UNIQUE (symbol);
+    ELSIF existing <> 'uk_companies_symbol' THEN
+        EXECUTE format('ALTER TABLE companies RENAME CONSTRAINT %I TO uk_companies_symbol', existing);
+    END IF;
+END
+$$;
@@ -0,0 +1,7 @@
+-- CompanyStock ids come from company_stock_seq in blocks of 50 (allocationSize = 50)
+-- Hibernate can send the inserts of a write-behind batch as one JDBC batch, which it cannot do with identity ids
+ALTER SEQUENCE company_stock_seq INCREMENT BY 50;
+
+-- the pooled optimizer takes a nextval as the top of its block and hands out the 49 ids below it,
+-- V2 left the sequence right after max(id), so the first block would reuse existing ids
+SELECT setval('company_stock_seq', coalesce((SELECT max(id) FROM company_stocks), 0) + 50);
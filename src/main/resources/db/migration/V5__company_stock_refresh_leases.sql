@@ -0,0 +1,9 @@
+-- one row per (company, day) being fetched from Finnhub, see CompanyStocksRefreshCoordinator
+-- the instance that inserts the row (or takes over an expired one) calls Finnhub, the others wait for its snapshot
+CREATE TABLE company_stock_refresh_leases (
+    company_id bigint                   NOT NULL,
+    fetch_date date                     NOT NULL,
+    owner      varchar(64)              NOT NULL,
+    expires_at timestamp with time zone NOT NULL,
+    CONSTRAINT pk_company_stock_refresh_leases PRIMARY KEY (company_id, fetch_date)
+);
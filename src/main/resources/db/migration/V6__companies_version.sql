@@ -0,0 +1,3 @@
+-- optimistic lock version of a company (Company.version), incremented by Hibernate on every update
+-- part of the ETag of the stock responses, so a changed company invalidates the clients' copies
+ALTER TABLE companies ADD COLUMN version bigint NOT NULL DEFAULT 0;
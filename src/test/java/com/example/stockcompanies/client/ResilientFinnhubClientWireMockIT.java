@@ -0,0 +1,166 @@
+package com.example.stockcompanies.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.*;
+
+// use profile without db configuration
+@ActiveProfiles("no-db")
+@SpringBootTest(
+        classes = ResilientFinnhubClientWireMockIT.TestApp.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE
+)
+// fresh breaker and limiter state for every test
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ResilientFinnhubClientWireMockIT {
+
+    // WireMock server simulates external Finnhub API
+    static final WireMockServer wm =
+            new WireMockServer(wireMockConfig().dynamicPort());
+
+    @Autowired
+    ResilientFinnhubClient client;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    // Feign client + resilient wrapper, no database
+    @SpringBootConfiguration
+    @EnableFeignClients(clients = FinnhubFeignClient.class)
+    @EnableAutoConfiguration(excludeName = {
+            // exclude db autoconfiguration
+            "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+            "org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration",
+            "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration",
+            "org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration"
+    })
+    @Import(ResilientFinnhubClient.class)
+    static class TestApp {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @BeforeAll
+    static void startServer() {
+        wm.start();
+        configureFor("localhost", wm.port());
+    }
+
+    @AfterAll
+    static void stopServer() {
+        wm.stop();
+    }
+
+    @BeforeEach
+    void resetStubs() {
+        wm.resetAll();
+    }
+
+    // point Feign to WireMock and use small limits so the tests trip them quickly
+    @DynamicPropertySource
+    static void overrideProps(DynamicPropertyRegistry registry) {
+        registry.add("finnhub.base-url", () -> "http://localhost:" + wm.port());
+        registry.add("spring.cloud.openfeign.client.config.finnhub.url", () -> "http://localhost:" + wm.port());
+        registry.add("finnhub.api-key", () -> "test-api-key");
+
+        registry.add("finnhub.rate-limit.limit-for-period", () -> "5");
+        registry.add("finnhub.rate-limit.refresh-period", () -> "1m");
+        registry.add("finnhub.rate-limit.timeout", () -> "0s");
+        registry.add("finnhub.circuit-breaker.sliding-window-size", () -> "4");
+        registry.add("finnhub.circuit-breaker.minimum-number-of-calls", () -> "4");
+        registry.add("finnhub.circuit-breaker.failure-rate-threshold", () -> "50");
+        registry.add("finnhub.circuit-breaker.wait-duration-in-open-state", () -> "1m");
+    }
+
+    @Test
+    void circuitBreaker_shouldOpenOnServerErrors_andStopCallingFinnhub() {
+
+        // Finnhub brownout
+        stubFor(get(urlPathEqualTo("/stock/profile2"))
+                .willReturn(serverError()));
+
+        // failures are passed through until the window is full
+        for (int i = 0; i < 4; i++) {
+            assertThrows(FeignException.class, () -> client.getCompanyProfile2("AAPL", "test-api-key"));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.circuitBreakerState());
+
+        // open breaker rejects without an HTTP call
+        assertThrows(FinnhubUnavailableException.class, () -> client.getCompanyProfile2("AAPL", "test-api-key"));
+        verify(4, getRequestedFor(urlPathEqualTo("/stock/profile2")));
+
+        // breaker state is exported as a metric (state=open -> 1)
+        assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", "finnhub")
+                .tag("state", "open")
+                .gauge().value());
+
+        // only the 4 real HTTP calls are timed, tagged with the upstream status
+        assertEquals(4, meterRegistry.get("finnhub.requests")
+                .tag("outcome", "SERVER_ERROR")
+                .tag("status", "500")
+                .timer().count());
+    }
+
+    @Test
+    void circuitBreaker_shouldIgnoreClientErrors() {
+
+        // unknown symbol is not an upstream failure
+        stubFor(get(urlPathEqualTo("/stock/profile2"))
+                .willReturn(notFound()));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(FeignException.NotFound.class, () -> client.getCompanyProfile2("NOPE", "test-api-key"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, client.circuitBreakerState());
+    }
+
+    @Test
+    void rateLimiter_shouldRejectCallsAboveThePlanLimit() {
+
+        stubFor(get(urlPathEqualTo("/stock/profile2"))
+                .willReturn(okJson("""
+                        {
+                          "marketCapitalization": 1.0,
+                          "shareOutstanding": 2.0
+                        }
+                        """)));
+
+        // 5 calls per minute are allowed
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(client.getCompanyProfile2("AAPL", "test-api-key"));
+        }
+
+        // the 6th call is rejected without reaching Finnhub
+        assertThrows(FinnhubUnavailableException.class, () -> client.getCompanyProfile2("AAPL", "test-api-key"));
+        verify(5, getRequestedFor(urlPathEqualTo("/stock/profile2")));
+        assertEquals(5, meterRegistry.get("finnhub.requests")
+                .tag("outcome", "SUCCESS")
+                .tag("status", "200")
+                .timer().count());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.stockcompanies.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SamplingLogFilterTest {
+
+    private final LoggerContext loggerContext = new LoggerContext();
+
+    @Test
+    void decide_shouldPassEveryNthEventOfTheSampledLogger() {
+        // given
+        SamplingLogFilter filter = new SamplingLogFilter();
+        filter.setLoggerName("org.hibernate.SQL_SLOW");
+        filter.setRate(3);
+
+        // when
+        List<FilterReply> replies = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            replies.add(filter.decide(event("org.hibernate.SQL_SLOW")));
+        }
+
+        // then
+        assertEquals(List.of(
+                FilterReply.NEUTRAL, FilterReply.DENY, FilterReply.DENY,
+                FilterReply.NEUTRAL, FilterReply.DENY, FilterReply.DENY), replies);
+    }
+
+    @Test
+    void decide_shouldNotTouchOtherLoggers() {
+        SamplingLogFilter filter = new SamplingLogFilter();
+        filter.setLoggerName("org.hibernate.SQL_SLOW");
+        filter.setRate(100);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(event("com.example.stockcompanies.service")));
+        }
+    }
+
+    @Test
+    void setRate_whenNotPositive_shouldThrow() {
+        SamplingLogFilter filter = new SamplingLogFilter();
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> filter.setRate(0));
+
+        assertEquals("rate must be positive", ex.getMessage());
+    }
+
+    private LoggingEvent event(String loggerName) {
+        return new LoggingEvent(getClass().getName(), loggerContext.getLogger(loggerName), Level.INFO,
+                "Slow query took 250 milliseconds", null, null);
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.stockcompanies.mapper;
 
+import com.example.stockcompanies.dto.CompanyStockView;
 import com.example.stockcompanies.dto.CompanyStocksResponse;
 import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.dto.StockSnapshot;
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.model.CompanyStock;
 import org.junit.jupiter.api.Test;
@@ -73,10 +75,12 @@ class CompanyStocksMapperTest {
         );
 
         ReflectionTestUtils.setField(company, "id", 10L);
+        ReflectionTestUtils.setField(company, "version", 2L);
 
+        LocalDate fetchDate = LocalDate.now();
         CompanyStock stock = new CompanyStock(
                 company,
-                LocalDate.now(),
+                fetchDate,
                 12.0,
                 34.0
         );
@@ -90,8 +94,46 @@ class CompanyStocksMapperTest {
         assertEquals("Mega Inc", dto.getName());
         assertEquals(12.0, dto.getMarketCapitalization(), 0.0001);
         assertEquals(34.0, dto.getShareOutstanding(), 0.0001);
+
+        // then freshness comes from the snapshot, stale is decided by the service
+        assertEquals(fetchDate, dto.getFetchDate());
+        assertFalse(dto.isStale());
+        assertEquals(2L, dto.getCompanyVersion());
     }
 
+    @Test
+    void toResponse_withSnapshotValues_shouldCombineCompanyAndValues() {
+
+        // given company and the values of a snapshot queued for the write-behind
+        Company company = new Company("Mega Inc", "MEGA", "BG", null, "mail", Instant.now());
+        ReflectionTestUtils.setField(company, "id", 10L);
+        LocalDate fetchDate = LocalDate.now();
+
+        // when mapping
+        CompanyStocksResponse dto = mapper.toResponse(company, new StockSnapshot(10L, fetchDate, 12.0, 34.0));
+
+        // then
+        assertEquals(10L, dto.getId());
+        assertEquals("MEGA", dto.getSymbol());
+        assertEquals(12.0, dto.getMarketCapitalization(), 0.0001);
+        assertEquals(34.0, dto.getShareOutstanding(), 0.0001);
+        assertEquals(fetchDate, dto.getFetchDate());
+    }
+
+    @Test
+    void toResponse_withoutStock_shouldMapOnlyCompanyFields() {
+
+        // given company without a snapshot
+        Company company = new Company("Mega Inc", "MEGA", "BG", null, "mail", Instant.now());
+
+        // when mapping
+        CompanyStocksResponse dto = mapper.toResponse(company, (CompanyStock) null);
+
+        // then company fields are set and stock fields stay empty
+        assertEquals("MEGA", dto.getSymbol());
+        assertNull(dto.getMarketCapitalization());
+        assertNull(dto.getFetchDate());
+    }
 
     @Test
     void toResponse_withFinnhub_shouldCombineCompanyAndFinnhub() {
@@ -123,4 +165,33 @@ class CompanyStocksMapperTest {
         assertEquals(78.0, dto.getShareOutstanding(), 0.0001);
     }
 
-}
\ No newline at end of file
+    @Test
+    void toResponse_withView_shouldMapCompanyAndStockColumns() {
+
+        // given projection row with company and today's stock columns
+        Instant createdAt = Instant.now();
+        LocalDate fetchDate = LocalDate.now();
+        CompanyStockView view = new CompanyStockView(
+                12L, "Mega Inc", "MEGA", "BG", "site", "mail", createdAt, 3L,
+                fetchDate, 12.0, 34.0);
+
+        // when mapping
+        CompanyStocksResponse dto = mapper.toResponse(view);
+
+        // then all fields should be present, the id comes from companyId
+        assertEquals(12L, dto.getId());
+        assertEquals("Mega Inc", dto.getName());
+        assertEquals("MEGA", dto.getSymbol());
+        assertEquals("BG", dto.getCountry());
+        assertEquals("site", dto.getWebsite());
+        assertEquals("mail", dto.getEmail());
+        assertEquals(createdAt, dto.getCreatedAt());
+        assertEquals(12.0, dto.getMarketCapitalization(), 0.0001);
+        assertEquals(34.0, dto.getShareOutstanding(), 0.0001);
+        assertEquals(fetchDate, dto.getFetchDate());
+        assertFalse(dto.isStale());
+        // company version is kept for the ETag
+        assertEquals(3L, dto.getCompanyVersion());
+    }
+
+}
@@ -2,19 +2,31 @@ package com.example.stockcompanies.service;
 
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.repository.CompanyRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -26,6 +38,10 @@ import static org.mockito.Mockito.when;
 class CompanyServiceTest {
     @Mock
     CompanyRepository companyRepository;
+    @Mock
+    CompanyStocksCache companyStocksCache;
+    @Mock
+    EntityManager entityManager;
     @InjectMocks
     CompanyService companyService;
 
@@ -44,10 +60,9 @@ class CompanyServiceTest {
         verifyNoInteractions(companyRepository);
     }
 
-    // expected IllegalStateException
+    // expected DuplicateSymbolException (409, an IllegalStateException)
     // with message "Company with symbol AAPL already exists"
-    // checks that existsBySymbol("AAPL") is called
-    // save() should never be called because there is a conflict
+    // there is no existsBySymbol query, the insert is rejected by the uk_companies_symbol unique index
     @Test
     void createCompany_whenSymbolAlreadyExists_shouldThrow() {
         Company company = mock(Company.class);
@@ -56,16 +71,31 @@ class CompanyServiceTest {
         when(company.getSymbol()).thenReturn("aapl");
         when(company.getEmail()).thenReturn("test@apple.com");
 
-        when(companyRepository.existsBySymbol("AAPL")).thenReturn(true);
+        when(companyRepository.saveAndFlush(company)).thenThrow(symbolViolation());
 
-        IllegalStateException ex = assertThrows(
-                IllegalStateException.class,
+        DuplicateSymbolException ex = assertThrows(
+                DuplicateSymbolException.class,
                 () -> companyService.createCompany(company)
         );
         // message should be "Company with symbol AAPL already exists"
         assertEquals("Company with symbol AAPL already exists", ex.getMessage());
-        verify(companyRepository).existsBySymbol("AAPL");
-        verify(companyRepository, never()).save(any());
+    }
+
+    // other constraint violations are not a symbol conflict and are passed on unchanged
+    @Test
+    void createCompany_whenOtherConstraintIsViolated_shouldRethrow() {
+        Company company = mock(Company.class);
+        when(company.getName()).thenReturn("Apple");
+        when(company.getCountry()).thenReturn("us");
+        when(company.getSymbol()).thenReturn("aapl");
+        when(company.getEmail()).thenReturn("test@apple.com");
+
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("not-null",
+                new ConstraintViolationException("not-null", new SQLException(), "companies_name_not_null"));
+        when(companyRepository.saveAndFlush(company)).thenThrow(violation);
+
+        assertSame(violation, assertThrows(DataIntegrityViolationException.class,
+                () -> companyService.createCompany(company)));
     }
 
     // expects the service to
@@ -80,8 +110,7 @@ class CompanyServiceTest {
         when(company.getEmail()).thenReturn("  test@apple.com  ");
         when(company.getWebsite()).thenReturn("  https://apple.com  ");
 
-        when(companyRepository.existsBySymbol("AAPL")).thenReturn(false);
-        when(companyRepository.save(company)).thenReturn(company);
+        when(companyRepository.saveAndFlush(company)).thenReturn(company);
 
         Company saved = companyService.createCompany(company);
 
@@ -95,9 +124,8 @@ class CompanyServiceTest {
         verify(company).updateEmail("test@apple.com");
         verify(company).updateWebsite("https://apple.com");
 
-        // check for unique symbol existsBySymbol("AAPL") and save
-        verify(companyRepository).existsBySymbol("AAPL");
-        verify(companyRepository).save(company);
+        // one insert, flushed right away so a symbol conflict surfaces here
+        verify(companyRepository).saveAndFlush(company);
     }
 
     // if website is null service should not call updateWebsite(), but still should save the company
@@ -110,28 +138,12 @@ class CompanyServiceTest {
         when(company.getEmail()).thenReturn("test@apple.com");
         when(company.getWebsite()).thenReturn(null);
 
-        when(companyRepository.existsBySymbol("AAPL")).thenReturn(false);
-        when(companyRepository.save(company)).thenReturn(company);
+        when(companyRepository.saveAndFlush(company)).thenReturn(company);
 
         companyService.createCompany(company);
 
         verify(company, never()).updateWebsite(any());
-        verify(companyRepository).save(company);
-    }
-
-    // the Service class do not work with the db itself, but delegates it to the repository class
-    // getAllCompanies should return what repository returns
-    @Test
-    void getAllCompanies_shouldReturnRepositoryResult() {
-        // list with 2 fake companies
-        List<Company> companies = List.of(mock(Company.class), mock(Company.class));
-        // tell the repository what to return
-        when(companyRepository.findAll()).thenReturn(companies);
-
-        List<Company> result = companyService.getAllCompanies();
-        //assertSame(company, saved) checks that the returned object is the same instance
-        assertSame(companies, result);
-        verify(companyRepository).findAll();
+        verify(companyRepository).saveAndFlush(company);
     }
 
     // when company is not found it should throw an exception
@@ -149,7 +161,8 @@ class CompanyServiceTest {
         assertEquals("Company with id 1 not found", ex.getMessage());
         verify(companyRepository).findById(1L);
         // save() should not be called
-        verify(companyRepository, never()).save(any());
+        verify(companyRepository, never()).saveAndFlush(any());
+        verifyNoInteractions(companyStocksCache);
     }
 
     // if you pass null as updated company it should throw IllegalArgumentException and not to touch the repository at all
@@ -168,8 +181,6 @@ class CompanyServiceTest {
     @Test
     void updateCompany_whenSymbolChangedToExisting_shouldThrow() {
         Company existing = mock(Company.class);
-        // there is an “existing” company with symbol "OLD"
-        when(existing.getSymbol()).thenReturn("OLD");
 
         when(companyRepository.findById(5L)).thenReturn(Optional.of(existing));
 
@@ -179,19 +190,18 @@ class CompanyServiceTest {
         when(updated.getSymbol()).thenReturn("dup");
         when(updated.getEmail()).thenReturn("a@b.com");
 
-        // check if requested symbol already exists
-        when(companyRepository.existsBySymbol("DUP")).thenReturn(true);
+        // the unique index says that "DUP" already exists
+        when(companyRepository.saveAndFlush(existing)).thenThrow(symbolViolation());
 
-        // repository should say that "DUP" already exists
-        IllegalStateException ex = assertThrows(
-                IllegalStateException.class,
+        DuplicateSymbolException ex = assertThrows(
+                DuplicateSymbolException.class,
                 () -> companyService.updateCompany(5L, updated)
         );
         // Service should throw error with message "Company with symbol DUP already exists"
         assertEquals("Company with symbol DUP already exists", ex.getMessage());
         verify(companyRepository).findById(5L);
-        verify(companyRepository).existsBySymbol("DUP");
-        verify(companyRepository, never()).save(any());
+        // nothing was changed, cached responses stay
+        verifyNoInteractions(companyStocksCache);
     }
 
     // happy ending scenario for updateCompany
@@ -200,7 +210,6 @@ class CompanyServiceTest {
     @Test
     void updateCompany_whenValid_shouldNormalizeAndSave() {
         Company existing = mock(Company.class);
-        when(existing.getSymbol()).thenReturn("OLD");
         // existing says that the company that is “already in the database”
         when(companyRepository.findById(10L)).thenReturn(Optional.of(existing));
 
@@ -211,8 +220,8 @@ class CompanyServiceTest {
         when(updated.getEmail()).thenReturn("  t@t.com ");
         when(updated.getWebsite()).thenReturn("  https://tesla.com  ");
 
-        when(companyRepository.existsBySymbol("TSLA")).thenReturn(false);
-        when(companyRepository.save(existing)).thenReturn(existing);
+        when(companyRepository.saveAndFlush(existing)).thenReturn(existing);
+        when(existing.getVersion()).thenReturn(3L);
 
         Company result = companyService.updateCompany(10L, updated);
         //assertSame(company, saved) checks that the returned object is the same instance.
@@ -224,7 +233,9 @@ class CompanyServiceTest {
         verify(existing).updateEmail("t@t.com");
         verify(existing).updateWebsite("https://tesla.com");
 
-        verify(companyRepository).save(existing);
+        verify(companyRepository).saveAndFlush(existing);
+        // cached stock responses of the company should be dropped, older versions are not cached again
+        verify(companyStocksCache).companyChanged(10L, 3L);
     }
 
     // when company exists service should return it
@@ -297,4 +308,141 @@ class CompanyServiceTest {
         assertEquals("Name is required", ex.getMessage());
         verifyNoInteractions(companyRepository);
     }
-}
\ No newline at end of file
+
+    // keyset page: default size when no limit, requested size capped at max size
+    @Test
+    void getCompaniesPage_shouldUseKeysetQueryWithCappedLimit() {
+        ReflectionTestUtils.setField(companyService, "defaultPageSize", 100);
+        ReflectionTestUtils.setField(companyService, "maxPageSize", 1000);
+
+        List<Company> page = List.of(mock(Company.class));
+        when(companyRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Limit.class))).thenReturn(page);
+        when(companyRepository.findByIdGreaterThanOrderByIdAsc(eq(50L), any(Limit.class))).thenReturn(List.of());
+
+        assertSame(page, companyService.getCompaniesPage(null, null));
+        assertEquals(List.of(), companyService.getCompaniesPage(50L, 5000));
+
+        ArgumentCaptor<Limit> limits = ArgumentCaptor.forClass(Limit.class);
+        verify(companyRepository).findByIdGreaterThanOrderByIdAsc(eq(0L), limits.capture());
+        verify(companyRepository).findByIdGreaterThanOrderByIdAsc(eq(50L), limits.capture());
+        assertEquals(List.of(100, 1000), limits.getAllValues().stream().map(Limit::max).toList());
+    }
+
+    @Test
+    void getCompaniesPage_whenLimitNotPositive_shouldThrow() {
+        IllegalArgumentException ex = assertThrows(
+                IllegalArgumentException.class,
+                () -> companyService.getCompaniesPage(null, 0)
+        );
+
+        assertEquals("limit must be positive", ex.getMessage());
+        verifyNoInteractions(companyRepository);
+    }
+
+    // streaming visits every company and detaches it, so the persistence context does not grow
+    @Test
+    void forEachCompany_shouldVisitAndDetachEveryCompany() {
+        Company c1 = mock(Company.class);
+        Company c2 = mock(Company.class);
+        when(companyRepository.streamAllOrderedById()).thenReturn(Stream.of(c1, c2));
+
+        List<Company> visited = new ArrayList<>();
+        companyService.forEachCompany(visited::add);
+
+        assertEquals(List.of(c1, c2), visited);
+        verify(entityManager).detach(c1);
+        verify(entityManager).detach(c2);
+    }
+
+    // bulk import normalizes every row, checks all symbols with one query and saves them together
+    @Test
+    void importCompanies_whenValid_shouldNormalizeAndSaveAll() {
+        ReflectionTestUtils.setField(companyService, "maxImportSize", 1000);
+        Company apple = new Company(" Apple ", " aapl ", " us ", null, " test@apple.com ", null);
+        Company msft = new Company("Microsoft", "msft", "us", " https://microsoft.com ", "test@microsoft.com", null);
+        List<Company> companies = List.of(apple, msft);
+
+        when(companyRepository.findExistingSymbols(Set.of("AAPL", "MSFT"))).thenReturn(Set.of());
+
+        int created = companyService.importCompanies(companies, 1);
+
+        assertEquals(2, created);
+        assertEquals("Apple", apple.getName());
+        assertEquals("AAPL", apple.getSymbol());
+        assertEquals("US", apple.getCountry());
+        assertEquals("test@apple.com", apple.getEmail());
+        assertEquals("https://microsoft.com", msft.getWebsite());
+        verify(companyRepository).saveAll(companies);
+    }
+
+    // an already stored symbol rejects the whole import
+    @Test
+    void importCompanies_whenSymbolAlreadyExists_shouldThrow() {
+        ReflectionTestUtils.setField(companyService, "maxImportSize", 1000);
+        List<Company> companies = List.of(
+                new Company("Apple", "AAPL", "US", null, "test@apple.com", null),
+                new Company("Microsoft", "MSFT", "US", null, "test@microsoft.com", null));
+
+        when(companyRepository.findExistingSymbols(Set.of("AAPL", "MSFT"))).thenReturn(Set.of("MSFT"));
+
+        DuplicateSymbolException ex = assertThrows(
+                DuplicateSymbolException.class,
+                () -> companyService.importCompanies(companies, 1)
+        );
+
+        assertEquals("Companies with symbols [MSFT] already exist", ex.getMessage());
+        verify(companyRepository, never()).saveAll(any());
+    }
+
+    // a symbol created by another request after the check is caught by the unique index at flush
+    @Test
+    void importCompanies_whenSymbolCreatedConcurrently_shouldThrowConflict() {
+        ReflectionTestUtils.setField(companyService, "maxImportSize", 1000);
+        List<Company> companies = List.of(new Company("Apple", "AAPL", "US", null, "test@apple.com", null));
+
+        when(companyRepository.findExistingSymbols(Set.of("AAPL"))).thenReturn(Set.of());
+        doThrow(symbolViolation()).when(companyRepository).flush();
+
+        assertThrows(DuplicateSymbolException.class, () -> companyService.importCompanies(companies, 1));
+    }
+
+    // the same symbol twice in one import is reported with its row number
+    @Test
+    void importCompanies_whenSymbolRepeated_shouldThrowWithRowNumber() {
+        ReflectionTestUtils.setField(companyService, "maxImportSize", 1000);
+        List<Company> companies = List.of(
+                new Company("Apple", "AAPL", "US", null, "test@apple.com", null),
+                new Company("Apple again", " aapl", "US", null, "test@apple.com", null));
+
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> companyService.importCompanies(companies, 501)
+        );
+
+        assertEquals("Row 502: Symbol AAPL appears more than once", ex.getMessage());
+        verifyNoInteractions(companyRepository);
+    }
+
+    // invalid rows get the createCompany message prefixed with the row number
+    @Test
+    void importCompanies_whenRowInvalid_shouldThrowWithRowNumber() {
+        ReflectionTestUtils.setField(companyService, "maxImportSize", 1000);
+        List<Company> companies = List.of(
+                new Company("Apple", "AAPL", "US", null, "test@apple.com", null),
+                new Company(" ", "MSFT", "US", null, "test@microsoft.com", null));
+
+        IllegalArgumentException ex = assertThrows(
+                IllegalArgumentException.class,
+                () -> companyService.importCompanies(companies, 1)
+        );
+
+        assertEquals("Row 2: Name is required", ex.getMessage());
+        verifyNoInteractions(companyRepository);
+    }
+
+    // what Spring throws when the insert or update hits uk_companies_symbol
+    private static DataIntegrityViolationException symbolViolation() {
+        return new DataIntegrityViolationException("duplicate key",
+                new ConstraintViolationException("duplicate key", new SQLException(), "uk_companies_symbol"));
+    }
+}
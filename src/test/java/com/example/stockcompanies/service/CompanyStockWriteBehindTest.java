@@ -0,0 +1,251 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.StockSnapshot;
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.example.stockcompanies.service.CompanyStockWriteBehind.fromCsv;
+import static com.example.stockcompanies.service.CompanyStockWriteBehind.toCsv;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CompanyStockWriteBehindTest {
+
+    @Mock CompanyRepository companyRepository;
+    @Mock CompanyStockRepository companyStockRepository;
+    // unstubbed - TransactionTemplate only calls getTransaction/commit/rollback
+    @Mock PlatformTransactionManager transactionManager;
+
+    @TempDir Path tempDir;
+
+    SimpleMeterRegistry meterRegistry;
+    Path spillFile;
+
+    static final LocalDate DAY = LocalDate.of(2025, 3, 3);
+    static final StockSnapshot FIRST = new StockSnapshot(1L, DAY, 10.0, 1.0);
+    static final StockSnapshot SECOND = new StockSnapshot(2L, DAY, 20.0, 2.0);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        spillFile = tempDir.resolve("spill").resolve("company-stocks.csv");
+    }
+
+    @Test
+    void flush_shouldInsertTheWholeBatchWithOneSaveAll() {
+        // given
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.flush(List.of(FIRST, SECOND));
+
+        // then
+        verify(companyStockRepository, times(1)).saveAll(anyList());
+        assertEquals(2.0, snapshots("saved"));
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void flush_whenBatchHasADuplicate_shouldSaveTheOthersOneByOne() {
+        // given - the batch fails on the unique constraint, then FIRST is the duplicate
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        when(companyStockRepository.saveAll(anyList()))
+                .thenThrow(violation("uk_company_stock_company_date"))
+                .thenThrow(violation("uk_company_stock_company_date"))
+                .thenReturn(List.of());
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.flush(List.of(FIRST, SECOND));
+
+        // then - nothing to retry, nothing spilled
+        verify(companyStockRepository, times(3)).saveAll(anyList());
+        assertEquals(1.0, snapshots("saved"));
+        assertEquals(1.0, snapshots("duplicate"));
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void flush_whenCompanyWasDeleted_shouldCountTheSnapshotAsFailed_notAsDuplicate() {
+        // given - FIRST's company is gone (foreign key), SECOND goes in
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        when(companyStockRepository.saveAll(anyList()))
+                .thenThrow(violation("company_stocks_company_id_fkey"))
+                .thenThrow(violation("company_stocks_company_id_fkey"))
+                .thenReturn(List.of());
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.flush(List.of(FIRST, SECOND));
+
+        // then - not retried, not spilled
+        assertEquals(1.0, snapshots("saved"));
+        assertEquals(1.0, snapshots("failed"));
+        assertEquals(0.0, snapshots("duplicate"));
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void flush_whenAValueIsMissing_shouldCountTheSnapshotAsFailed() {
+        // given - Finnhub left out the market capitalization
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.flush(List.of(new StockSnapshot(1L, DAY, null, 1.0), SECOND));
+
+        // then - the other snapshot still goes in with one saveAll
+        verify(companyStockRepository, times(1)).saveAll(anyList());
+        assertEquals(1.0, snapshots("saved"));
+        assertEquals(1.0, snapshots("failed"));
+        assertFalse(Files.exists(spillFile));
+    }
+
+    @Test
+    void flush_whenDatabaseStaysDown_shouldSpillAndReplayOnNextStart() throws Exception {
+        // given
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        when(companyStockRepository.saveAll(anyList()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.flush(List.of(FIRST, SECOND));
+
+        // then - max-attempts (2) tries, then both snapshots are in the spill file
+        verify(companyStockRepository, times(2)).saveAll(anyList());
+        assertEquals(List.of(toCsv(FIRST), toCsv(SECOND)), Files.readAllLines(spillFile));
+        assertEquals(2.0, snapshots("spilled"));
+
+        // the next instance inserts them and removes the file only after that
+        doReturn(List.of()).when(companyStockRepository).saveAll(anyList());
+        CompanyStockWriteBehind restarted = writeBehind(true);
+        restarted.replaySpillFile();
+        assertEquals(2.0, snapshots("saved"));
+        assertFalse(Files.exists(spillFile));
+        assertFalse(Files.exists(replaying()));
+    }
+
+    @Test
+    void replaySpillFile_whenAnEarlierReplayDidNotFinish_shouldReplayItWithTheNewSpillFile() throws Exception {
+        // given - a crash during the last replay left the .replaying file, that run spilled SECOND
+        Files.createDirectories(spillFile.getParent());
+        Files.write(replaying(), List.of(toCsv(FIRST)));
+        Files.write(spillFile, List.of(toCsv(SECOND)));
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.replaySpillFile();
+
+        // then
+        assertEquals(2.0, snapshots("saved"));
+        assertFalse(Files.exists(spillFile));
+        assertFalse(Files.exists(replaying()));
+    }
+
+    @Test
+    void replaySpillFile_whenDatabaseStillDown_shouldKeepTheSnapshotsInTheSpillFile() throws Exception {
+        // given
+        Files.createDirectories(spillFile.getParent());
+        Files.write(spillFile, List.of(toCsv(FIRST)));
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        when(companyStockRepository.saveAll(anyList()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.replaySpillFile();
+
+        // then - spilled again for the next start
+        assertEquals(List.of(toCsv(FIRST)), Files.readAllLines(spillFile));
+        assertFalse(Files.exists(replaying()));
+    }
+
+    @Test
+    void replaySpillFile_shouldMoveUnreadableLinesAsideInsteadOfFailing() throws Exception {
+        // given
+        Files.createDirectories(spillFile.getParent());
+        Files.write(spillFile, List.of("1,2025-03-03,null,1.0", toCsv(FIRST), "garbage"));
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        CompanyStockWriteBehind writeBehind = writeBehind(true);
+
+        // when
+        writeBehind.replaySpillFile();
+
+        // then - the readable snapshot is inserted, the others wait in .rejected
+        assertEquals(1.0, snapshots("saved"));
+        assertEquals(List.of("1,2025-03-03,null,1.0", "garbage"),
+                Files.readAllLines(spillFile.resolveSibling("company-stocks.csv.rejected")));
+        assertFalse(Files.exists(replaying()));
+    }
+
+    @Test
+    void offer_whenDisabled_shouldLeaveTheInsertToTheCaller() {
+        CompanyStockWriteBehind writeBehind = writeBehind(false);
+
+        assertFalse(writeBehind.offer(FIRST));
+        assertEquals(0, writeBehind.queued());
+    }
+
+    @Test
+    void csv_shouldRoundTripThroughCsv() {
+        assertEquals(FIRST, fromCsv(toCsv(FIRST)));
+        assertTrue(toCsv(FIRST).startsWith("1,2025-03-03,"));
+    }
+
+    @Test
+    void csv_shouldKeepMissingValuesAsEmptyColumns() {
+        StockSnapshot withoutValues = new StockSnapshot(1L, DAY, null, null);
+
+        assertEquals("1,2025-03-03,,", toCsv(withoutValues));
+        assertEquals(withoutValues, fromCsv(toCsv(withoutValues)));
+    }
+
+    private CompanyStockWriteBehind writeBehind(boolean enabled) {
+        return new CompanyStockWriteBehind(companyRepository, companyStockRepository, transactionManager,
+                meterRegistry, enabled, 50, Duration.ofMillis(100), 100, 2, Duration.ZERO, spillFile, Duration.ofSeconds(1));
+    }
+
+    private static DataIntegrityViolationException violation(String constraint) {
+        return new DataIntegrityViolationException("constraint violation",
+                new ConstraintViolationException("violation", new SQLException(), constraint));
+    }
+
+    private Path replaying() {
+        return spillFile.resolveSibling("company-stocks.csv.replaying");
+    }
+
+    private double snapshots(String outcome) {
+        return meterRegistry.get("company.stocks.write-behind.snapshots").tag("outcome", outcome).counter().count();
+    }
+}
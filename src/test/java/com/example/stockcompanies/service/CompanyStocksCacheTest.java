@@ -0,0 +1,89 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.CompanyStocksResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompanyStocksCacheTest {
+
+    private final CompanyStocksCache cache = new CompanyStocksCache(100, Duration.ofHours(1));
+
+    @Test
+    void get_shouldReturnPutResponse_forTodaysKey() {
+
+        // given response cached for today
+        CompanyStockKey key = new CompanyStockKey(1L, LocalDate.now());
+        CompanyStocksResponse response = CompanyStocksResponse.builder().id(1L).build();
+
+        cache.put(key, response);
+
+        // then same instance is returned
+        assertSame(response, cache.get(key));
+    }
+
+    @Test
+    void get_shouldReturnNull_forPreviousDay() {
+
+        // given response cached for yesterday
+        CompanyStockKey key = new CompanyStockKey(1L, LocalDate.now().minusDays(1));
+
+        cache.put(key, CompanyStocksResponse.builder().id(1L).build());
+
+        // then it is already expired by the rollover
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    void evictCompany_shouldRemoveOnlyThatCompany() {
+
+        // given responses for two companies
+        LocalDate today = LocalDate.now();
+        CompanyStockKey first = new CompanyStockKey(1L, today);
+        CompanyStockKey second = new CompanyStockKey(2L, today);
+
+        cache.put(first, CompanyStocksResponse.builder().id(1L).build());
+        cache.put(second, CompanyStocksResponse.builder().id(2L).build());
+
+        // when company 1 changes
+        cache.evictCompany(1L);
+
+        // then only its response is dropped
+        assertNull(cache.get(first));
+        assertNotNull(cache.get(second));
+    }
+
+    @Test
+    void put_afterCompanyChanged_shouldIgnoreResponsesWithAnOlderVersion() {
+
+        // given company 1 changed to version 3
+        CompanyStockKey key = new CompanyStockKey(1L, LocalDate.now());
+        cache.put(key, CompanyStocksResponse.builder().id(1L).companyVersion(2L).build());
+        cache.companyChanged(1L, 3L);
+        assertNull(cache.get(key));
+
+        // when a request that read version 2 before the commit puts its response
+        cache.put(key, CompanyStocksResponse.builder().id(1L).companyVersion(2L).build());
+
+        // then it is not cached, the new version is
+        assertNull(cache.get(key));
+        CompanyStocksResponse current = CompanyStocksResponse.builder().id(1L).companyVersion(3L).build();
+        cache.put(key, current);
+        assertSame(current, cache.get(key));
+    }
+
+    @Test
+    void untilRollover_shouldBeTheRestOfTheDay_andZeroForPreviousDays() {
+
+        // today's snapshot is valid until midnight
+        Duration today = CompanyStocksCache.untilRollover(LocalDate.now());
+        assertTrue(today.compareTo(Duration.ZERO) > 0);
+        assertTrue(today.compareTo(Duration.ofDays(1)) <= 0);
+
+        // yesterday's one is already replaced
+        assertEquals(Duration.ZERO, CompanyStocksCache.untilRollover(LocalDate.now().minusDays(1)));
+    }
+}
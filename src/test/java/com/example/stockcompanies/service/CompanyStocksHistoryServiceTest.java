@@ -0,0 +1,106 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.dto.CompanyStocksHistoryResponse;
+import com.example.stockcompanies.dto.StockHistoryPoint;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CompanyStocksHistoryServiceTest {
+    @Mock
+    CompanyRepository companyRepository;
+    @Mock
+    CompanyStockRepository companyStockRepository;
+    @InjectMocks
+    CompanyStocksHistoryService historyService;
+
+    private static final LocalDate FROM = LocalDate.of(2025, 1, 1);
+    private static final LocalDate TO = LocalDate.of(2025, 1, 31);
+
+    // daily history is returned as parallel lists in date order
+    @Test
+    void getHistory_whenDaily_shouldReturnColumns() {
+        // given
+        when(companyRepository.existsById(1L)).thenReturn(true);
+        when(companyStockRepository.findHistory(1L, FROM, TO)).thenReturn(List.of(
+                new StockHistoryPoint(LocalDate.of(2025, 1, 2), 100.0, 10.0),
+                new StockHistoryPoint(LocalDate.of(2025, 1, 3), 101.0, 10.5)));
+
+        // when
+        CompanyStocksHistoryResponse response = historyService.getHistory(1L, FROM, TO, null);
+
+        // then
+        assertEquals("day", response.getInterval());
+        assertEquals(List.of(LocalDate.of(2025, 1, 2), LocalDate.of(2025, 1, 3)), response.getDates());
+        assertEquals(List.of(100.0, 101.0), response.getMarketCapitalization());
+        assertEquals(List.of(10.0, 10.5), response.getShareOutstanding());
+    }
+
+    // week/month downsampling is delegated to the SQL query with the date_trunc unit
+    @Test
+    void getHistory_whenMonthly_shouldUseLastPerPeriodQuery() {
+        // given
+        when(companyRepository.existsById(1L)).thenReturn(true);
+        when(companyStockRepository.findHistoryLastPerPeriod(1L, FROM, TO, "month")).thenReturn(List.of(
+                new StockHistoryPoint(LocalDate.of(2025, 1, 31), 120.0, 11.0)));
+
+        // when
+        CompanyStocksHistoryResponse response = historyService.getHistory(1L, FROM, TO, " Month ");
+
+        // then
+        assertEquals("month", response.getInterval());
+        assertEquals(List.of(LocalDate.of(2025, 1, 31)), response.getDates());
+        verify(companyStockRepository).findHistoryLastPerPeriod(1L, FROM, TO, "month");
+    }
+
+    @Test
+    void getHistory_whenFromAfterTo_shouldThrow() {
+        IllegalArgumentException ex = assertThrows(
+                IllegalArgumentException.class,
+                () -> historyService.getHistory(1L, TO, FROM, null)
+        );
+
+        assertEquals("from must not be after to", ex.getMessage());
+        verifyNoInteractions(companyRepository, companyStockRepository);
+    }
+
+    @Test
+    void getHistory_whenIntervalUnknown_shouldThrow() {
+        when(companyRepository.existsById(1L)).thenReturn(true);
+
+        IllegalArgumentException ex = assertThrows(
+                IllegalArgumentException.class,
+                () -> historyService.getHistory(1L, FROM, TO, "hour")
+        );
+
+        assertEquals("interval must be one of day, week, month", ex.getMessage());
+        verifyNoInteractions(companyStockRepository);
+    }
+
+    @Test
+    void getHistory_whenCompanyMissing_shouldThrow() {
+        when(companyRepository.existsById(99L)).thenReturn(false);
+
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> historyService.getHistory(99L, FROM, TO, null)
+        );
+
+        assertEquals("Company with id 99 not found", ex.getMessage());
+        verifyNoInteractions(companyStockRepository);
+    }
+}
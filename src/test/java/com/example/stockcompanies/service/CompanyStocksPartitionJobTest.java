@@ -0,0 +1,85 @@
+package com.example.stockcompanies.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompanyStocksPartitionJobTest {
+
+    @Test
+    void partitionsBefore_shouldReturnOnlyWholeMonthsBeforeTheFirstKeptMonth() {
+        // given
+        List<String> partitions = List.of(
+                "company_stocks_2024_03", "company_stocks_2023_12", "company_stocks_2024_02", "company_stocks_2024_01");
+
+        // when
+        List<String> expired = CompanyStocksPartitionJob.partitionsBefore(partitions, YearMonth.of(2024, 2));
+
+        // then
+        assertEquals(List.of("company_stocks_2023_12", "company_stocks_2024_01"), expired);
+    }
+
+    @Test
+    void partitionsBefore_shouldIgnoreTablesThatAreNotMonthlyPartitions() {
+        List<String> partitions = List.of("company_stocks_default", "company_stocks_2020_01_old", "company_stocks_2020_01");
+
+        assertEquals(List.of("company_stocks_2020_01"),
+                CompanyStocksPartitionJob.partitionsBefore(partitions, YearMonth.of(2021, 1)));
+    }
+
+    @Test
+    void constructor_shouldRejectRetentionBelowOneMonth() {
+        // the current month must never be detached
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompanyStocksPartitionJob(mock(DataSource.class), 3, 0, false));
+    }
+
+    @Test
+    void maintainOnStartup_whenDatabaseFails_shouldNotThrow() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenThrow(new SQLException("connection refused"));
+        CompanyStocksPartitionJob job = new CompanyStocksPartitionJob(dataSource, 3, 24, false);
+
+        // the application keeps starting, the cron run tries again
+        assertDoesNotThrow(job::maintainOnStartup);
+    }
+
+    @Test
+    void maintain_whenAnotherInstanceHoldsTheLock_shouldSkip() throws SQLException {
+        // given - pg_try_advisory_lock answers false
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement lockStatement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement("select pg_try_advisory_lock(?)")).thenReturn(lockStatement);
+        when(lockStatement.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getBoolean(1)).thenReturn(false);
+        CompanyStocksPartitionJob job = new CompanyStocksPartitionJob(dataSource, 3, 24, false);
+
+        // when
+        boolean maintained = job.maintain();
+
+        // then - no partition created and no unlock of a lock this instance does not hold
+        assertFalse(maintained);
+        verify(connection, never()).prepareStatement("select create_company_stocks_partition(?)");
+        verify(connection, never()).prepareStatement("select pg_advisory_unlock(?)");
+        verify(connection, never()).createStatement();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.model.Company;
+import com.example.stockcompanies.repository.CompanyRepository;
+import com.example.stockcompanies.repository.CompanyStockRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CompanyStocksPrewarmJobTest {
+
+    @Mock CompanyRepository companyRepository;
+    @Mock CompanyStockRepository companyStockRepository;
+    @Mock CompanyStocksService companyStocksService;
+    @Mock TaskScheduler taskScheduler;
+
+    SimpleMeterRegistry meterRegistry;
+    CompanyStocksPrewarmJob job;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // page size 2 to walk more than one keyset page, high call rate so the test does not wait
+        job = new CompanyStocksPrewarmJob(companyRepository, companyStockRepository, companyStocksService,
+                taskScheduler, meterRegistry, 2, false, 60_000);
+    }
+
+    @Test
+    void prewarm_shouldFetchOnlyCompaniesWithoutTodaysSnapshot() {
+        LocalDate today = LocalDate.now();
+        Company c1 = company(1L);
+        Company c2 = company(2L);
+        Company c3 = company(3L);
+
+        when(companyRepository.count()).thenReturn(3L);
+        when(companyRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Limit.class))).thenReturn(List.of(c1, c2));
+        when(companyRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), any(Limit.class))).thenReturn(List.of(c3));
+        when(companyRepository.findByIdGreaterThanOrderByIdAsc(eq(3L), any(Limit.class))).thenReturn(List.of());
+
+        // company 2 was already done before a restart
+        when(companyStockRepository.findCompanyIdsWithSnapshot(anyCollection(), eq(today)))
+                .thenReturn(Set.of(2L))
+                .thenReturn(Set.of());
+
+        // company 1 is fetched, company 3 fails upstream
+        when(companyStocksService.getFreshCompanyStocks(anyLong())).thenReturn(null);
+        when(companyStocksService.getFreshCompanyStocks(3L)).thenThrow(new IllegalStateException("Finnhub down"));
+
+        job.prewarm();
+
+        verify(companyStocksService).getFreshCompanyStocks(1L);
+        verify(companyStocksService, never()).getFreshCompanyStocks(2L);
+        verify(companyStocksService).getFreshCompanyStocks(3L);
+
+        // progress metrics per outcome
+        assertEquals(1.0, counter("fetched"));
+        assertEquals(1.0, counter("skipped"));
+        assertEquals(1.0, counter("failed"));
+        assertEquals(0.0, meterRegistry.get("company.stocks.prewarm.remaining").gauge().value());
+    }
+
+    private double counter(String outcome) {
+        return meterRegistry.get("company.stocks.prewarm.companies").tag("outcome", outcome).counter().count();
+    }
+
+    private static Company company(Long id) {
+        Company company = mock(Company.class);
+        when(company.getId()).thenReturn(id);
+        return company;
+    }
+}
@@ -1,23 +1,38 @@
 package com.example.stockcompanies.service;
 
-import com.example.stockcompanies.client.FinnhubFeignClient;
+import com.example.stockcompanies.client.FinnhubUnavailableException;
+import com.example.stockcompanies.client.ResilientFinnhubClient;
+import com.example.stockcompanies.dto.CompanyStockView;
 import com.example.stockcompanies.dto.CompanyStocksResponse;
 import com.example.stockcompanies.dto.FinnhubCompanyProfileResponse;
+import com.example.stockcompanies.dto.StockSnapshot;
 import com.example.stockcompanies.mapper.CompanyStocksMapper;
 import com.example.stockcompanies.model.Company;
 import com.example.stockcompanies.model.CompanyStock;
 import com.example.stockcompanies.repository.CompanyRepository;
 import com.example.stockcompanies.repository.CompanyStockRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -28,15 +43,32 @@ class CompanyStocksServiceTest {
 
     @Mock CompanyRepository companyRepository;
     @Mock CompanyStockRepository companyStockRepository;
-    @Mock FinnhubFeignClient finnhubClient;
+    @Mock ResilientFinnhubClient finnhubClient;
     @Mock CompanyStocksMapper mapper;
+    @Mock CompanyStocksCache cache;
+    @Spy FinnhubCallExecutor finnhubCallExecutor =
+            new FinnhubCallExecutor(FinnhubCallExecutor.Mode.PLATFORM, 2, Duration.ofSeconds(1));
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    @Spy CompanyStocksMetrics metrics = new CompanyStocksMetrics(meterRegistry);
+    // unstubbed - TransactionTemplate only calls getTransaction/commit/rollback
+    @Mock PlatformTransactionManager transactionManager;
+    // disabled unless a test stubs isEnabled() - snapshots are inserted in the request
+    @Mock CompanyStockWriteBehind writeBehind;
+    // disabled - single instance, the refresh runs directly
+    @Spy CompanyStocksRefreshCoordinator refreshCoordinator = new CompanyStocksRefreshCoordinator(
+            null, null, meterRegistry, false, Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofMillis(200));
 
     @InjectMocks CompanyStocksService service;
 
+    @AfterEach
+    void shutdownExecutor() {
+        finnhubCallExecutor.shutdown();
+    }
+
     @Test
     void getCompanyStocks_whenCompanyNotFound_shouldThrow() {
         long companyId = 42L;
-        when(companyRepository.findById(companyId)).thenReturn(Optional.empty());
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class))).thenReturn(Optional.empty());
 
         IllegalStateException ex = assertThrows(
                 IllegalStateException.class,
@@ -44,29 +76,23 @@ class CompanyStocksServiceTest {
         );
         assertEquals("Company with id 42 not found", ex.getMessage());
 
-        verify(companyRepository).findById(companyId);
+        verify(companyRepository).findStockView(eq(companyId), any(LocalDate.class));
 
         // service should fail fast and not call downstream dependencies
-        verifyNoInteractions(finnhubClient, mapper);
-        verify(companyStockRepository, never()).save(any());
-        verify(companyStockRepository, never()).findByCompanyIdAndFetchDate(anyLong(), any());
+        verifyNoInteractions(finnhubClient, mapper, companyStockRepository);
     }
 
     @Test
     void getCompanyStocks_whenCacheExists_shouldReturnCache() {
         long companyId = 7L;
 
-        Company company = mock(Company.class);
-        CompanyStock cached = mock(CompanyStock.class);
-
-        when(companyRepository.findById(companyId)).thenReturn(Optional.of(company));
-        when(companyStockRepository.findByCompanyIdAndFetchDate(eq(companyId), any(LocalDate.class)))
-                .thenReturn(Optional.of(cached));
+        CompanyStockView view = view(companyId, "MEGA", LocalDate.now(), 1.0, 2.0);
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class))).thenReturn(Optional.of(view));
 
         CompanyStocksResponse mapped = CompanyStocksResponse.builder().id(companyId).build();
 
         // only stub what is actually used: the mapper call that produces the response
-        when(mapper.toResponse(company, cached)).thenReturn(mapped);
+        when(mapper.toResponse(view)).thenReturn(mapped);
 
         CompanyStocksResponse result = service.getCompanyStocks(companyId);
 
@@ -75,11 +101,12 @@ class CompanyStocksServiceTest {
 
         // with cache hit, external API should not be called and nothing should be saved
         verifyNoInteractions(finnhubClient);
-        verify(companyStockRepository, never()).save(any());
 
-        verify(companyRepository).findById(companyId);
-        verify(companyStockRepository).findByCompanyIdAndFetchDate(eq(companyId), any(LocalDate.class));
-        verify(mapper).toResponse(company, cached);
+        // company and today's snapshot come from one query - no separate company or snapshot lookup
+        verify(companyRepository).findStockView(eq(companyId), any(LocalDate.class));
+        verifyNoMoreInteractions(companyRepository);
+        verifyNoInteractions(companyStockRepository);
+        verify(mapper).toResponse(view);
         verifyNoMoreInteractions(mapper);
     }
 
@@ -91,15 +118,13 @@ class CompanyStocksServiceTest {
         long companyId = 99L;
         LocalDate today = LocalDate.now();
 
-        Company company = mock(Company.class);
+        // service needs the symbol to call Finnhub - it comes from the view, no stock columns yet
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "MEGA", null, null, null)));
 
-        // service needs the symbol to call Finnhub
-        // stub only what is required
-        when(company.getSymbol()).thenReturn("MEGA");
-
-        when(companyRepository.findById(companyId)).thenReturn(Optional.of(company));
-        when(companyStockRepository.findByCompanyIdAndFetchDate(eq(companyId), any(LocalDate.class)))
-                .thenReturn(Optional.empty());
+        // the new snapshot only references the company by id
+        Company companyRef = mock(Company.class);
+        when(companyRepository.getReferenceById(companyId)).thenReturn(companyRef);
 
         FinnhubCompanyProfileResponse finnhubResp = mock(FinnhubCompanyProfileResponse.class);
         when(finnhubResp.getMarketCapitalization()).thenReturn(555.0);
@@ -118,8 +143,8 @@ class CompanyStocksServiceTest {
                 .shareOutstanding(111.0)
                 .build();
 
-        // the mapper is called with the company and the saved CompanyStock
-        when(mapper.toResponse(eq(company), any(CompanyStock.class))).thenReturn(mapped);
+        // the mapper is called with the view filled with the saved snapshot
+        when(mapper.toResponse(any(CompanyStockView.class))).thenReturn(mapped);
 
         CompanyStocksResponse result = service.getCompanyStocks(companyId);
 
@@ -137,13 +162,550 @@ class CompanyStocksServiceTest {
         assertNotNull(saved);
 
         // service most likely uses LocalDate.now(); align assertion with that
+        assertSame(companyRef, saved.getCompany());
         assertEquals(today, saved.getFetchDate());
         assertEquals(Double.valueOf(555.0), saved.getMarketCapitalization());
         assertEquals(Double.valueOf(111.0), saved.getShareOutstanding());
 
-        verify(companyRepository).findById(companyId);
-        verify(companyStockRepository).findByCompanyIdAndFetchDate(eq(companyId), any(LocalDate.class));
-        verify(mapper).toResponse(eq(company), any(CompanyStock.class));
+        ArgumentCaptor<CompanyStockView> mappedView = ArgumentCaptor.forClass(CompanyStockView.class);
+        verify(mapper).toResponse(mappedView.capture());
+        assertEquals(today, mappedView.getValue().fetchDate());
+        assertEquals(Double.valueOf(555.0), mappedView.getValue().marketCapitalization());
+        assertEquals("MEGA", mappedView.getValue().symbol());
         verifyNoMoreInteractions(mapper);
+        verify(companyStockRepository, never()).findByCompanyIdAndFetchDate(anyLong(), any());
+        assertEquals(1.0, lookups("database", "miss"));
+    }
+
+    @Test
+    void getCompanyStocks_whenWriteBehindEnabled_shouldQueueSnapshotInsteadOfSaving() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        long companyId = 99L;
+
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "MEGA", null, null, null)));
+        FinnhubCompanyProfileResponse finnhubResp = mock(FinnhubCompanyProfileResponse.class);
+        when(finnhubResp.getMarketCapitalization()).thenReturn(555.0);
+        when(finnhubResp.getShareOutstanding()).thenReturn(111.0);
+        when(finnhubClient.getCompanyProfile2("MEGA", "test-api-key")).thenReturn(finnhubResp);
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(writeBehind.offer(any(StockSnapshot.class))).thenReturn(true);
+        CompanyStocksResponse mapped = CompanyStocksResponse.builder().id(companyId).build();
+        when(mapper.toResponse(any(CompanyStockView.class))).thenReturn(mapped);
+
+        assertSame(mapped, service.getCompanyStocks(companyId));
+
+        // the response carries Finnhub's values, the insert is left to the write-behind
+        // queued by company id - no company reference or entity is created for it
+        ArgumentCaptor<StockSnapshot> queued = ArgumentCaptor.forClass(StockSnapshot.class);
+        verify(writeBehind).offer(queued.capture());
+        assertEquals(new StockSnapshot(companyId, LocalDate.now(), 555.0, 111.0), queued.getValue());
+        verify(companyRepository, never()).getReferenceById(anyLong());
+        ArgumentCaptor<CompanyStockView> mappedView = ArgumentCaptor.forClass(CompanyStockView.class);
+        verify(mapper).toResponse(mappedView.capture());
+        assertEquals(Double.valueOf(555.0), mappedView.getValue().marketCapitalization());
+        verify(companyStockRepository, never()).save(any());
+        verify(cache).put(new CompanyStockKey(companyId, LocalDate.now()), mapped);
+    }
+
+    @Test
+    void getCompanyStocks_whenCacheMissing_shouldCallFinnhubBetweenReadAndWriteTransactions() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        long companyId = 99L;
+
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "MEGA", null, null, null)));
+        when(companyRepository.getReferenceById(companyId)).thenReturn(mock(Company.class));
+        FinnhubCompanyProfileResponse finnhubResp = mock(FinnhubCompanyProfileResponse.class);
+        when(finnhubResp.getMarketCapitalization()).thenReturn(555.0);
+        when(finnhubResp.getShareOutstanding()).thenReturn(111.0);
+        when(finnhubClient.getCompanyProfile2("MEGA", "test-api-key")).thenReturn(finnhubResp);
+        when(companyStockRepository.save(any(CompanyStock.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        service.getCompanyStocks(companyId);
+
+        // read-only transaction is committed before Finnhub is called, the write transaction starts after it
+        var order = inOrder(transactionManager, companyRepository, finnhubClient, companyStockRepository);
+        order.verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        order.verify(companyRepository).findStockView(eq(companyId), any(LocalDate.class));
+        order.verify(transactionManager).commit(any());
+        order.verify(finnhubClient).getCompanyProfile2("MEGA", "test-api-key");
+        order.verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()));
+        order.verify(companyStockRepository).save(any(CompanyStock.class));
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void getCompanyStocks_whenInMemoryCacheHit_shouldNotTouchDatabase() {
+        long companyId = 5L;
+        CompanyStocksResponse cached = CompanyStocksResponse.builder().id(companyId).build();
+
+        when(cache.get(new CompanyStockKey(companyId, LocalDate.now()))).thenReturn(cached);
+
+        CompanyStocksResponse result = service.getCompanyStocks(companyId);
+
+        assertSame(cached, result);
+
+        // cache hit answers without repositories, Finnhub or mapping
+        verifyNoInteractions(companyRepository, companyStockRepository, finnhubClient, mapper);
+        verify(cache, never()).put(any(), any());
+        assertEquals(1.0, lookups("memory", "hit"));
+    }
+
+    @Test
+    void getCompanyStocks_whenLoadedFromDatabase_shouldPutResponseInCache() {
+        long companyId = 8L;
+
+        CompanyStockView view = view(companyId, "MEGA", LocalDate.now(), 1.0, 2.0);
+        CompanyStocksResponse mapped = CompanyStocksResponse.builder().id(companyId).build();
+
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class))).thenReturn(Optional.of(view));
+        when(mapper.toResponse(view)).thenReturn(mapped);
+
+        service.getCompanyStocks(companyId);
+
+        verify(cache).put(new CompanyStockKey(companyId, LocalDate.now()), mapped);
+
+        // memory miss, database hit
+        assertEquals(1.0, lookups("memory", "miss"));
+        assertEquals(1.0, lookups("database", "hit"));
+        assertEquals(0.0, lookups("database", "miss"));
+    }
+
+    @Test
+    void getCompanyStocks_whenSnapshotSavedConcurrently_shouldReturnStoredSnapshot() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+
+        long companyId = 12L;
+        LocalDate today = LocalDate.now();
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "MEGA", null, null, null)));
+        when(companyRepository.getReferenceById(companyId)).thenReturn(mock(Company.class));
+
+        FinnhubCompanyProfileResponse finnhubResp = new FinnhubCompanyProfileResponse();
+        finnhubResp.setMarketCapitalization(1.0);
+        finnhubResp.setShareOutstanding(2.0);
+
+        CompanyStock storedByOtherInstance = mock(CompanyStock.class);
+        when(storedByOtherInstance.getCompany()).thenReturn(mock(Company.class));
+        when(storedByOtherInstance.getFetchDate()).thenReturn(today);
+        when(storedByOtherInstance.getMarketCapitalization()).thenReturn(9.0);
+        CompanyStocksResponse mapped = CompanyStocksResponse.builder().id(companyId).build();
+
+        // the lookup after the unique constraint violation finds the other row
+        when(companyStockRepository.findByCompanyIdAndFetchDate(companyId, today))
+                .thenReturn(Optional.of(storedByOtherInstance));
+        when(finnhubClient.getCompanyProfile2("MEGA", "test-api-key")).thenReturn(finnhubResp);
+        when(companyStockRepository.save(any(CompanyStock.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_company_stock_company_date"));
+        when(mapper.toResponse(argThat((CompanyStockView v) -> Double.valueOf(9.0).equals(v.marketCapitalization()))))
+                .thenReturn(mapped);
+
+        CompanyStocksResponse result = service.getCompanyStocks(companyId);
+
+        // constraint violation is not surfaced to the client
+        assertSame(mapped, result);
+        verify(companyStockRepository).findByCompanyIdAndFetchDate(companyId, today);
+    }
+
+    @Test
+    void getCompanyStocksBatch_shouldCombineCacheDatabaseAndFinnhub_inRequestOrder() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(service, "maxBatchSize", 10);
+        ReflectionTestUtils.setField(service, "batchTimeout", Duration.ofSeconds(5));
+        LocalDate today = LocalDate.now();
+
+        // company 3 is in the in-memory cache
+        CompanyStocksResponse cached3 = CompanyStocksResponse.builder().id(3L).build();
+        when(cache.get(new CompanyStockKey(3L, today))).thenReturn(cached3);
+
+        // company 1 has today's snapshot in the database, company 2 does not, 99 does not exist
+        Company company1 = mock(Company.class);
+        when(company1.getId()).thenReturn(1L);
+        Company company2 = mock(Company.class);
+        when(company2.getId()).thenReturn(2L);
+        when(company2.getSymbol()).thenReturn("TWO");
+        when(companyRepository.findAllById(List.of(1L, 2L, 99L))).thenReturn(List.of(company1, company2));
+
+        CompanyStock stored1 = mock(CompanyStock.class);
+        when(stored1.getCompany()).thenReturn(company1);
+        when(companyStockRepository.findByCompanyIdInAndFetchDate(anyCollection(), eq(today)))
+                .thenReturn(List.of(stored1));
+
+        FinnhubCompanyProfileResponse finnhubResp = new FinnhubCompanyProfileResponse();
+        finnhubResp.setMarketCapitalization(5.0);
+        finnhubResp.setShareOutstanding(6.0);
+        when(finnhubClient.getCompanyProfile2("TWO", "test-api-key")).thenReturn(finnhubResp);
+        when(companyRepository.getReferenceById(2L)).thenReturn(company2);
+        when(companyStockRepository.save(any(CompanyStock.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        CompanyStocksResponse mapped1 = CompanyStocksResponse.builder().id(1L).build();
+        CompanyStocksResponse mapped2 = CompanyStocksResponse.builder().id(2L).build();
+        when(mapper.toResponse(company1, stored1)).thenReturn(mapped1);
+        when(mapper.toResponse(eq(company2), any(StockSnapshot.class))).thenReturn(mapped2);
+
+        List<CompanyStocksResponse> result = service.getCompanyStocksBatch(List.of(3L, 1L, 2L, 1L, 99L));
+
+        // duplicates and unknown ids are dropped, order follows the request
+        assertEquals(List.of(cached3, mapped1, mapped2), result);
+
+        // only the missing snapshot goes to Finnhub
+        verify(finnhubClient).getCompanyProfile2("TWO", "test-api-key");
+        verifyNoMoreInteractions(finnhubClient);
+    }
+
+    @Test
+    void getCompanyStocksBatch_inVirtualMode_shouldFetchEveryMiss_whenMoreMissesThanCallSlots() {
+        // 2 call slots, and every Finnhub call takes longer than the 100ms a call may wait for a slot
+        FinnhubCallExecutor virtualExecutor =
+                new FinnhubCallExecutor(FinnhubCallExecutor.Mode.VIRTUAL, 2, Duration.ofMillis(100));
+        ReflectionTestUtils.setField(service, "finnhubCallExecutor", virtualExecutor);
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(service, "maxBatchSize", 10);
+        ReflectionTestUtils.setField(service, "batchTimeout", Duration.ofSeconds(5));
+        LocalDate today = LocalDate.now();
+
+        // 6 companies, none has today's snapshot
+        List<Long> ids = List.of(1L, 2L, 3L, 4L, 5L, 6L);
+        List<Company> companies = ids.stream().map(id -> {
+            Company company = mock(Company.class);
+            when(company.getId()).thenReturn(id);
+            when(company.getSymbol()).thenReturn("SYM" + id);
+            return company;
+        }).toList();
+        when(companyRepository.findAllById(ids)).thenReturn(companies);
+        when(companyStockRepository.findByCompanyIdInAndFetchDate(anyCollection(), eq(today))).thenReturn(List.of());
+
+        FinnhubCompanyProfileResponse finnhubResp = new FinnhubCompanyProfileResponse();
+        finnhubResp.setMarketCapitalization(1.0);
+        finnhubResp.setShareOutstanding(2.0);
+        when(finnhubClient.getCompanyProfile2(anyString(), eq("test-api-key"))).thenAnswer(inv -> {
+            Thread.sleep(150);
+            return finnhubResp;
+        });
+        when(companyRepository.getReferenceById(anyLong())).thenReturn(mock(Company.class));
+        when(companyStockRepository.save(any(CompanyStock.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(mapper.toResponse(any(Company.class), any(StockSnapshot.class))).thenAnswer(inv ->
+                CompanyStocksResponse.builder().id(inv.<Company>getArgument(0).getId()).build());
+
+        List<CompanyStocksResponse> result;
+        try {
+            result = service.getCompanyStocksBatch(ids);
+        } finally {
+            virtualExecutor.shutdown();
+        }
+
+        // the background fetches wait for each other instead of timing out on the gate - no company is dropped
+        assertEquals(ids, result.stream().map(CompanyStocksResponse::getId).toList());
+        verify(finnhubClient, times(6)).getCompanyProfile2(anyString(), eq("test-api-key"));
+    }
+
+    @Test
+    void getCompanyStocksBatch_whenFetchFailsOrTimesOut_shouldReturnLatestStoredSnapshotAsStale() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(service, "maxBatchSize", 10);
+        ReflectionTestUtils.setField(service, "batchTimeout", Duration.ofMillis(100));
+        LocalDate today = LocalDate.now();
+
+        // neither company has today's snapshot
+        Company company1 = mock(Company.class);
+        when(company1.getId()).thenReturn(1L);
+        when(company1.getSymbol()).thenReturn("ONE");
+        Company company2 = mock(Company.class);
+        when(company2.getId()).thenReturn(2L);
+        when(company2.getSymbol()).thenReturn("TWO");
+        when(companyRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(company1, company2));
+        when(companyStockRepository.findByCompanyIdInAndFetchDate(anyCollection(), eq(today))).thenReturn(List.of());
+
+        // company 1 is rate limited, company 2 answers long after the batch timeout
+        when(finnhubClient.getCompanyProfile2("ONE", "test-api-key"))
+                .thenThrow(new FinnhubUnavailableException("Finnhub rate limit exceeded"));
+        when(finnhubClient.getCompanyProfile2("TWO", "test-api-key")).thenAnswer(inv -> {
+            Thread.sleep(1_000);
+            return null;
+        });
+
+        // only company 1 has an older snapshot stored
+        CompanyStock yesterday1 = mock(CompanyStock.class);
+        when(yesterday1.getCompany()).thenReturn(company1);
+        when(companyStockRepository.findLatestByCompanyIdIn(argThat(ids -> ids.containsAll(List.of(1L, 2L)))))
+                .thenReturn(List.of(yesterday1));
+        when(mapper.toResponse(company1, yesterday1)).thenReturn(CompanyStocksResponse.builder().id(1L).build());
+
+        long start = System.nanoTime();
+        List<CompanyStocksResponse> result = service.getCompanyStocksBatch(List.of(1L, 2L));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // company 1 is served from the stored snapshot as stale, company 2 has nothing to fall back to
+        assertEquals(List.of(1L), result.stream().map(CompanyStocksResponse::getId).toList());
+        assertTrue(result.get(0).isStale());
+        // the batch does not wait for the slow call
+        assertTrue(elapsedMillis < 900, "batch took " + elapsedMillis + "ms");
+        verify(cache, never()).put(any(), any());
+    }
+
+    @Test
+    void getCompanyStocksBatch_whenTooManyIds_shouldThrow() {
+        ReflectionTestUtils.setField(service, "maxBatchSize", 2);
+
+        IllegalArgumentException ex = assertThrows(
+                IllegalArgumentException.class,
+                () -> service.getCompanyStocksBatch(List.of(1L, 2L, 3L))
+        );
+        assertEquals("At most 2 companyIds are allowed per request", ex.getMessage());
+        verifyNoInteractions(companyRepository, companyStockRepository, finnhubClient);
+    }
+
+    @Test
+    void getCompanyStocksAsync_whenFinnhubTimesOut_shouldReturnLatestStoredSnapshot() throws Exception {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(service, "asyncTimeout", Duration.ofMillis(50));
+
+        long companyId = 21L;
+        Company company = mock(Company.class);
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "SLOW", null, null, null)));
+
+        // Finnhub answers much later than the timeout
+        when(finnhubClient.getCompanyProfile2("SLOW", "test-api-key")).thenAnswer(inv -> {
+            Thread.sleep(1_000);
+            return null;
+        });
+
+        CompanyStock yesterday = mock(CompanyStock.class);
+        when(yesterday.getCompany()).thenReturn(company);
+        when(yesterday.getFetchDate()).thenReturn(LocalDate.now().minusDays(1));
+        when(companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId))
+                .thenReturn(Optional.of(yesterday));
+
+        CompanyStocksResponse fallback = CompanyStocksResponse.builder().id(companyId).build();
+        when(mapper.toResponse(company, yesterday)).thenReturn(fallback);
+
+        CompanyStocksResponse result = service.getCompanyStocksAsync(companyId).get(5, TimeUnit.SECONDS);
+
+        // stored snapshot is served as stale and not put into the in-memory cache
+        assertEquals(companyId, result.getId());
+        assertTrue(result.isStale());
+        verify(cache, never()).put(any(), any());
+    }
+
+    @Test
+    void getCompanyStocksAsync_whenFinnhubPoolSaturated_shouldStillAnswerWithinTimeout() throws Exception {
+        ReflectionTestUtils.setField(service, "asyncTimeout", Duration.ofMillis(50));
+        long companyId = 23L;
+
+        // both Finnhub threads are stuck in slow calls
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            finnhubCallExecutor.submit(() -> {
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            });
+        }
+
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "STUCK", null, null, null)));
+        Company company = mock(Company.class);
+        CompanyStock yesterday = mock(CompanyStock.class);
+        when(yesterday.getCompany()).thenReturn(company);
+        when(yesterday.getFetchDate()).thenReturn(LocalDate.now().minusDays(1));
+        when(companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId))
+                .thenReturn(Optional.of(yesterday));
+        when(mapper.toResponse(company, yesterday)).thenReturn(CompanyStocksResponse.builder().id(companyId).build());
+
+        try {
+            // the fallback does not queue behind the stuck calls
+            CompanyStocksResponse result = service.getCompanyStocksAsync(companyId).get(1, TimeUnit.SECONDS);
+            assertEquals(companyId, result.getId());
+            assertTrue(result.isStale());
+        } finally {
+            release.countDown();
+        }
+
+        // the fetch that timed out in the queue is dropped once a thread is free, not run for nobody
+        Thread.sleep(200);
+        verifyNoInteractions(finnhubClient);
+    }
+
+    @Test
+    void getCompanyStocksAsync_whenTodaysSnapshotStored_shouldNotWaitForTheFinnhubPool() throws Exception {
+        ReflectionTestUtils.setField(service, "asyncTimeout", Duration.ofMillis(200));
+        long companyId = 24L;
+
+        // both Finnhub threads are stuck in slow calls
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            finnhubCallExecutor.submit(() -> {
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            });
+        }
+
+        CompanyStockView view = view(companyId, "STORED", LocalDate.now(), 1.0, 2.0);
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class))).thenReturn(Optional.of(view));
+        CompanyStocksResponse mapped = CompanyStocksResponse.builder().id(companyId).build();
+        when(mapper.toResponse(view)).thenReturn(mapped);
+
+        try {
+            // today's snapshot comes from the database lookup, not from the stale fallback
+            CompanyStocksResponse result = service.getCompanyStocksAsync(companyId).get(1, TimeUnit.SECONDS);
+            assertSame(mapped, result);
+            assertFalse(result.isStale());
+        } finally {
+            release.countDown();
+        }
+        verify(companyStockRepository, never()).findFirstByCompanyIdOrderByFetchDateDesc(anyLong());
+    }
+
+    @Test
+    void getCompanyStocksAsync_whenFailedAndNothingStored_shouldFailWithOriginalError() {
+        ReflectionTestUtils.setField(service, "asyncTimeout", Duration.ofSeconds(3));
+        long companyId = 22L;
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class))).thenReturn(Optional.empty());
+        when(companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId))
+                .thenReturn(Optional.empty());
+
+        ExecutionException ex = assertThrows(
+                ExecutionException.class,
+                () -> service.getCompanyStocksAsync(companyId).get(5, TimeUnit.SECONDS)
+        );
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        assertEquals("Company with id 22 not found", ex.getCause().getMessage());
+    }
+
+    @Test
+    void getCompanyStocks_whenStaleWhileRevalidate_shouldServePreviousSnapshotAndRefreshInBackground() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(service, "staleWhileRevalidate", true);
+
+        long companyId = 31L;
+        LocalDate today = LocalDate.now();
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "OLD", null, null, null)));
+        when(companyRepository.getReferenceById(companyId)).thenReturn(mock(Company.class));
+
+        CompanyStock yesterday = mock(CompanyStock.class);
+        when(yesterday.getFetchDate()).thenReturn(today.minusDays(1));
+        when(companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId))
+                .thenReturn(Optional.of(yesterday));
+
+        FinnhubCompanyProfileResponse finnhubResp = new FinnhubCompanyProfileResponse();
+        finnhubResp.setMarketCapitalization(3.0);
+        finnhubResp.setShareOutstanding(4.0);
+        when(finnhubClient.getCompanyProfile2("OLD", "test-api-key")).thenReturn(finnhubResp);
+        when(companyStockRepository.save(any(CompanyStock.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        CompanyStocksResponse previous = CompanyStocksResponse.builder()
+                .id(companyId)
+                .fetchDate(today.minusDays(1))
+                .build();
+        CompanyStocksResponse fresh = CompanyStocksResponse.builder()
+                .id(companyId)
+                .fetchDate(today)
+                .build();
+        // the view carries the snapshot values - yesterday's for the stale answer, today's after the refresh
+        when(mapper.toResponse(any(CompanyStockView.class))).thenAnswer(inv ->
+                today.equals(inv.<CompanyStockView>getArgument(0).fetchDate()) ? fresh : previous);
+
+        CompanyStocksResponse result = service.getCompanyStocks(companyId);
+
+        // answered immediately with yesterday's data, flagged stale
+        assertTrue(result.isStale());
+        assertEquals(today.minusDays(1), result.getFetchDate());
+
+        // today's snapshot is fetched, saved and cached in the background
+        verify(finnhubClient, timeout(5_000)).getCompanyProfile2("OLD", "test-api-key");
+        verify(cache, timeout(5_000)).put(new CompanyStockKey(companyId, today), fresh);
+    }
+
+    @Test
+    void getFreshCompanyStocks_whenStaleWhileRevalidate_shouldWaitForTodaysSnapshot() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(service, "staleWhileRevalidate", true);
+
+        long companyId = 32L;
+        LocalDate today = LocalDate.now();
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "FRESH", null, null, null)));
+        when(companyRepository.getReferenceById(companyId)).thenReturn(mock(Company.class));
+
+        FinnhubCompanyProfileResponse finnhubResp = new FinnhubCompanyProfileResponse();
+        finnhubResp.setMarketCapitalization(3.0);
+        finnhubResp.setShareOutstanding(4.0);
+        when(finnhubClient.getCompanyProfile2("FRESH", "test-api-key")).thenReturn(finnhubResp);
+        when(companyStockRepository.save(any(CompanyStock.class))).thenAnswer(inv -> inv.getArgument(0));
+        CompanyStocksResponse fresh = CompanyStocksResponse.builder().id(companyId).fetchDate(today).build();
+        when(mapper.toResponse(any(CompanyStockView.class))).thenReturn(fresh);
+
+        CompanyStocksResponse result = service.getFreshCompanyStocks(companyId);
+
+        // fetched in the call, the previous snapshot is not even looked up
+        assertSame(fresh, result);
+        assertFalse(result.isStale());
+        verify(companyStockRepository, never()).findFirstByCompanyIdOrderByFetchDateDesc(anyLong());
+    }
+
+    @Test
+    void getFreshCompanyStocks_whenFinnhubUnavailable_shouldThrow() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+
+        long companyId = 42L;
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "DOWN", null, null, null)));
+        when(finnhubClient.getCompanyProfile2("DOWN", "test-api-key"))
+                .thenThrow(new FinnhubUnavailableException("Finnhub circuit breaker is open"));
+
+        // no stored snapshot served as a success
+        assertThrows(FinnhubUnavailableException.class, () -> service.getFreshCompanyStocks(companyId));
+        verify(companyStockRepository, never()).findFirstByCompanyIdOrderByFetchDateDesc(anyLong());
+    }
+
+    @Test
+    void getCompanyStocks_whenFinnhubUnavailable_shouldServeStoredSnapshotAsStale() {
+        ReflectionTestUtils.setField(service, "apiKey", "test-api-key");
+
+        long companyId = 41L;
+        Company company = mock(Company.class);
+        when(companyRepository.findStockView(eq(companyId), any(LocalDate.class)))
+                .thenReturn(Optional.of(view(companyId, "OPEN", null, null, null)));
+
+        // circuit breaker is open
+        when(finnhubClient.getCompanyProfile2("OPEN", "test-api-key"))
+                .thenThrow(new FinnhubUnavailableException("Finnhub circuit breaker is open"));
+
+        CompanyStock lastWeek = mock(CompanyStock.class);
+        when(lastWeek.getCompany()).thenReturn(company);
+        when(companyStockRepository.findFirstByCompanyIdOrderByFetchDateDesc(companyId))
+                .thenReturn(Optional.of(lastWeek));
+        when(mapper.toResponse(company, lastWeek))
+                .thenReturn(CompanyStocksResponse.builder().id(companyId).build());
+
+        CompanyStocksResponse result = service.getCompanyStocks(companyId);
+
+        assertEquals(companyId, result.getId());
+        assertTrue(result.isStale());
+        verify(companyStockRepository, never()).save(any());
+    }
+
+    private double lookups(String level, String result) {
+        return meterRegistry.get("company.stocks.cache.lookups")
+                .tag("level", level)
+                .tag("result", result)
+                .counter().count();
+    }
+
+    // projection row as returned by CompanyRepository.findStockView
+    private static CompanyStockView view(Long companyId, String symbol,
+                                         LocalDate fetchDate, Double marketCapitalization, Double shareOutstanding) {
+        return new CompanyStockView(companyId, "Company " + symbol, symbol, "US", null, "ir@example.com",
+                Instant.now(), 0L, fetchDate, marketCapitalization, shareOutstanding);
     }
-}
\ No newline at end of file
+}
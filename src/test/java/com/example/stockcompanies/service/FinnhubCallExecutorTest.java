@@ -0,0 +1,100 @@
+package com.example.stockcompanies.service;
+
+import com.example.stockcompanies.client.FinnhubUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FinnhubCallExecutorTest {
+
+    // one slot, short wait for a free slot
+    private final FinnhubCallExecutor executor =
+            new FinnhubCallExecutor(FinnhubCallExecutor.Mode.VIRTUAL, 1, Duration.ofMillis(50));
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void submit_inVirtualMode_shouldRunOnVirtualThread() throws Exception {
+
+        // when task runs in the background
+        Boolean virtual = executor.submit(() -> Thread.currentThread().isVirtual()).get(5, TimeUnit.SECONDS);
+
+        // then it used a virtual thread
+        assertTrue(virtual);
+    }
+
+    @Test
+    void call_whenAllSlotsBusy_shouldFailFast() throws Exception {
+
+        // given the only slot is taken by a slow upstream call
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = executor.submit(() -> executor.call(() -> {
+            started.countDown();
+            await(release);
+            return "slow";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.activeCalls());
+
+        // then the next call is rejected instead of waiting forever
+        assertThrows(FinnhubUnavailableException.class, () -> executor.call(() -> "rejected"));
+
+        // and the slot is free again when the slow call finishes
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+        assertEquals("next", executor.call(() -> "next"));
+        assertEquals(0, executor.activeCalls());
+    }
+
+    @Test
+    void submit_inVirtualMode_shouldWaitForTheRunningTasks_insteadOfFailing() throws Exception {
+
+        // given more background tasks than call slots, each holding its slot longer than the acquire timeout
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(executor.submit(() -> executor.call(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(100);
+                running.decrementAndGet();
+                return "done";
+            })));
+        }
+
+        // then all of them complete, one after another
+        for (CompletableFuture<String> task : tasks) {
+            assertEquals("done", task.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.stockcompanies.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+    @Test
+    void execute_whenCalledConcurrently_shouldRunLoaderOnce() throws Exception {
+
+        // given a slow loader that blocks until all callers are waiting
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        CountDownLatch arrived = new CountDownLatch(callers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    arrived.countDown();
+                    return singleFlight.execute("AAPL", () -> {
+                        loads.incrementAndGet();
+                        await(release);
+                        return 42;
+                    });
+                }));
+            }
+
+            // wait until every caller reached execute, then let the leader finish
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+
+            // then every caller gets the same value from a single load
+            for (Future<Integer> result : results) {
+                assertEquals(42, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_whenLoaderFails_shouldRethrowAndAllowNextLoad() {
+
+        // given a failing loader
+        IllegalStateException failure = new IllegalStateException("upstream down");
+
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> singleFlight.execute("AAPL", () -> { throw failure; })
+        );
+        assertSame(failure, ex);
+
+        // then the key is released and the next call loads again
+        assertEquals(7, singleFlight.execute("AAPL", () -> 7));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}